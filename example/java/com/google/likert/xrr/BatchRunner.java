@@ -0,0 +1,395 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.likert.xrr.IRepDatasetEntry.Mood;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs many xRR comparisons between replications of IRep datasets in a single process.
+ *
+ * <p>Each line of the job spec file is a comma separated job {@code
+ * datasetX,platformX,datasetY,platformY,mood,distance}, where datasets are paths to IRep CSV files,
+ * mood is a {@link Mood} and distance is {@code NOMINAL} or {@code INTERVAL_SQUARED}. Empty lines
+ * and lines starting with {@code #} are ignored. Each result is appended to the output file as
+ * soon as its job finishes, as the job's columns followed by the xRR score.
+ *
+ * <p>Every dataset file is loaded once, all files in parallel with {@link IRepDatasetLoader}, and
+ * the summary dataset of each (dataset, platform, mood) is built once by its {@link IRepDataset}
+ * and released from it after the last job that uses it. Both distance functions are symmetric, so
+ * duplicated jobs and jobs with swapped replications are computed once. Jobs run on one thread per
+ * processor, ordered so that jobs sharing summary datasets run close to each other. A job is only
+ * started once the estimated size of the summary datasets it adds fits in the heap budget, which
+ * summary datasets hold until they are released.
+ */
+public final class BatchRunner {
+
+  /** Distances between ratings of a mood, with interval distance treating true as 1, false as 0. */
+  private static final ImmutableMap<String, DistanceFunction<? super Boolean>> DISTANCE_FUNCTIONS =
+      ImmutableMap.of(
+          "NOMINAL",
+          DistanceFunctions.NOMINAL,
+          "INTERVAL_SQUARED",
+          (a, b) -> DistanceFunctions.INTERVAL_SQUARED.computeDistance(a ? 1 : 0, b ? 1 : 0));
+  private static final ImmutableSet<String> MOOD_NAMES =
+      Arrays.stream(Mood.values()).map(Mood::name).collect(toImmutableSet());
+  /** Rough heap footprint of an item with a single annotation in a summary dataset, in bytes. */
+  private static final long SUMMARY_BYTES_PER_ITEM = 200;
+  /** Rough heap footprint of a second annotation of an item in a summary dataset, in bytes. */
+  private static final long SUMMARY_BYTES_PER_EXTRA_ANNOTATION = 50;
+  /** How often a job waiting for heap budget checks whether any job is still running. */
+  private static final long ADMISSION_POLL_MILLIS = 100;
+  /** Fraction of the free heap, after loading datasets, that running jobs may use. */
+  private static final double HEAP_BUDGET_FRACTION = 0.5;
+
+  /** A replication: ratings of a platform in a dataset file. */
+  @AutoValue
+  abstract static class Replication {
+    abstract String datasetPath();
+
+    abstract String platform();
+
+    static Replication create(String datasetPath, String platform) {
+      return new AutoValue_BatchRunner_Replication(datasetPath, platform);
+    }
+
+    @Override
+    public final String toString() {
+      return datasetPath() + "," + platform();
+    }
+  }
+
+  /** Key of a summary dataset shared between jobs. */
+  @AutoValue
+  abstract static class SummaryKey {
+    abstract Replication replication();
+
+    abstract Mood mood();
+
+    static SummaryKey create(Replication replication, Mood mood) {
+      return new AutoValue_BatchRunner_SummaryKey(replication, mood);
+    }
+  }
+
+  /** An xRR comparison between two replications. */
+  @AutoValue
+  abstract static class Job {
+    private static final Comparator<Replication> REPLICATION_ORDER =
+        Comparator.comparing(Replication::datasetPath).thenComparing(Replication::platform);
+    /** Order of canonical jobs that keeps jobs sharing summary datasets close to each other. */
+    static final Comparator<Job> EXECUTION_ORDER =
+        Comparator.comparing(Job::mood)
+            .thenComparing(Job::replicationX, REPLICATION_ORDER)
+            .thenComparing(Job::replicationY, REPLICATION_ORDER)
+            .thenComparing(Job::distance);
+
+    abstract Replication replicationX();
+
+    abstract Replication replicationY();
+
+    abstract Mood mood();
+
+    abstract String distance();
+
+    static Job fromCsvEntry(String[] csvEntry) {
+      if (csvEntry.length != 6
+          || !MOOD_NAMES.contains(csvEntry[4])
+          || !DISTANCE_FUNCTIONS.containsKey(csvEntry[5])) {
+        throw new IllegalArgumentException(
+            "Invalid job, expected datasetX,platformX,datasetY,platformY,mood,distance with mood"
+                + " in "
+                + MOOD_NAMES
+                + " and distance in "
+                + DISTANCE_FUNCTIONS.keySet()
+                + ": "
+                + String.join(",", csvEntry));
+      }
+      return new AutoValue_BatchRunner_Job(
+          Replication.create(csvEntry[0], csvEntry[1]),
+          Replication.create(csvEntry[2], csvEntry[3]),
+          Mood.valueOf(csvEntry[4]),
+          csvEntry[5]);
+    }
+
+    /** Returns the job with ordered replications, which has the same score as this job. */
+    Job canonical() {
+      if (REPLICATION_ORDER.compare(replicationX(), replicationY()) <= 0) {
+        return this;
+      }
+      return new AutoValue_BatchRunner_Job(replicationY(), replicationX(), mood(), distance());
+    }
+
+    SummaryKey summaryKeyX() {
+      return SummaryKey.create(replicationX(), mood());
+    }
+
+    SummaryKey summaryKeyY() {
+      return SummaryKey.create(replicationY(), mood());
+    }
+
+    ImmutableList<SummaryKey> summaryKeys() {
+      return ImmutableList.of(summaryKeyX(), summaryKeyY());
+    }
+
+    @Override
+    public final String toString() {
+      return String.join(
+          ",", replicationX().toString(), replicationY().toString(), mood().name(), distance());
+    }
+  }
+
+  /**
+   * Runs the jobs of {@code jobSpecPath} and writes their results to {@code outputPath}.
+   *
+   * @return number of jobs that failed
+   */
+  public static int run(Path jobSpecPath, Path outputPath)
+      throws IOException, InterruptedException {
+    ImmutableListMultimap<Job, Job> jobsByCanonicalJob = groupJobs(readJobs(jobSpecPath));
+    ImmutableMap<String, IRepDataset> datasets = loadDatasets(jobsByCanonicalJob.values());
+
+    // Admission budget in KiB, so that it fits in the permits of a semaphore.
+    Runtime runtime = Runtime.getRuntime();
+    long freeHeapBytes = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    int heapBudgetKib =
+        (int) Math.max(1, Math.min(Integer.MAX_VALUE, freeHeapBytes * HEAP_BUDGET_FRACTION / 1024));
+    SummaryDatasets summaryDatasets =
+        new SummaryDatasets(datasets, jobsByCanonicalJob.keySet(), heapBudgetKib);
+
+    ExecutorService executor = Executors.newFixedThreadPool(runtime.availableProcessors());
+    AtomicInteger numFailedJobs = new AtomicInteger();
+    try (Writer writer = Files.newBufferedWriter(outputPath, UTF_8)) {
+      List<Future<?>> results = new ArrayList<>();
+      for (Job job : jobsByCanonicalJob.keySet()) {
+        summaryDatasets.admit(job);
+        results.add(
+            executor.submit(
+                () -> {
+                  try {
+                    float score =
+                        XrrProcessor.computeXrrWithSummaryDatasets(
+                            summaryDatasets.get(job.summaryKeyX()),
+                            summaryDatasets.get(job.summaryKeyY()),
+                            DISTANCE_FUNCTIONS.get(job.distance()),
+                            XrrMetrics.WITH_MISSING_DATA);
+                    writeResults(writer, jobsByCanonicalJob.get(job), score);
+                  } catch (RuntimeException e) {
+                    numFailedJobs.incrementAndGet();
+                    System.err.printf("ERROR: Job %s failed: %s%n", job, e);
+                  } finally {
+                    summaryDatasets.release(job);
+                  }
+                }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return numFailedJobs.get();
+  }
+
+  /**
+   * Groups {@code jobs} by canonical job, so that duplicated and swapped jobs share a single
+   * computation. Canonical jobs are ordered by mood and then by replications, so that jobs sharing
+   * a summary dataset run close to each other and the summary dataset is released early.
+   */
+  static ImmutableListMultimap<Job, Job> groupJobs(List<Job> jobs) {
+    ImmutableListMultimap.Builder<Job, Job> jobsByCanonicalJob =
+        ImmutableListMultimap.<Job, Job>builder().orderKeysBy(Job.EXECUTION_ORDER);
+    for (Job job : jobs) {
+      jobsByCanonicalJob.put(job.canonical(), job);
+    }
+    return jobsByCanonicalJob.build();
+  }
+
+  private static ImmutableList<Job> readJobs(Path jobSpecPath) throws IOException {
+    try (Reader reader = Files.newBufferedReader(jobSpecPath, UTF_8);
+        CSVReader csvReader = new CSVReaderBuilder(reader).build()) {
+      return csvReader.readAll().stream()
+          .filter(csvEntry -> !isBlankOrComment(csvEntry))
+          .map(csvEntry -> Job.fromCsvEntry(trim(csvEntry)))
+          .collect(toImmutableList());
+    }
+  }
+
+  private static boolean isBlankOrComment(String[] csvEntry) {
+    return (csvEntry.length == 1 && csvEntry[0].trim().isEmpty())
+        || csvEntry[0].trim().startsWith("#");
+  }
+
+  private static String[] trim(String[] csvEntry) {
+    String[] trimmed = new String[csvEntry.length];
+    for (int i = 0; i < csvEntry.length; i++) {
+      trimmed[i] = csvEntry[i].trim();
+    }
+    return trimmed;
+  }
+
+  private static ImmutableMap<String, IRepDataset> loadDatasets(Collection<Job> jobs)
+      throws IOException, InterruptedException {
+    ImmutableList<String> datasetPaths =
+        jobs.stream()
+            .flatMap(job -> Stream.of(job.replicationX(), job.replicationY()))
+            .map(Replication::datasetPath)
+            .distinct()
+            .collect(toImmutableList());
+    ImmutableMap<Path, IRepDataset> datasets =
+        IRepDatasetLoader.loadCsvFiles(
+            datasetPaths.stream().map(Paths::get).collect(toImmutableList()));
+    return datasetPaths.stream()
+        .collect(toImmutableMap(identity(), datasetPath -> datasets.get(Paths.get(datasetPath))));
+  }
+
+  private static void writeResults(Writer writer, List<Job> jobs, float score) {
+    synchronized (writer) {
+      try {
+        for (Job job : jobs) {
+          writer.write(String.format(Locale.ROOT, "%s,%.4f%n", job, score));
+        }
+        writer.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Summary datasets of the jobs, built on first use by their {@link IRepDataset}. A summary
+   * dataset takes its estimated size out of the heap budget when the first job using it is
+   * admitted, and gives it back when the last job using it is done.
+   */
+  private static final class SummaryDatasets {
+    private final ImmutableMap<String, IRepDataset> datasets;
+    private final int heapBudgetKib;
+    private final Semaphore heapBudget;
+    /** Number of jobs yet to finish using each summary dataset. */
+    private final Map<SummaryKey, AtomicInteger> remainingUses = new ConcurrentHashMap<>();
+    /** Heap budget taken by each admitted summary dataset, in KiB. */
+    private final Map<SummaryKey, Integer> admittedKib = new ConcurrentHashMap<>();
+    private final AtomicInteger numRunningJobs = new AtomicInteger();
+
+    SummaryDatasets(
+        ImmutableMap<String, IRepDataset> datasets, Collection<Job> jobs, int heapBudgetKib) {
+      this.datasets = datasets;
+      this.heapBudgetKib = heapBudgetKib;
+      this.heapBudget = new Semaphore(heapBudgetKib);
+      for (Job job : jobs) {
+        for (SummaryKey key : job.summaryKeys()) {
+          remainingUses.computeIfAbsent(key, unused -> new AtomicInteger()).incrementAndGet();
+        }
+      }
+    }
+
+    /** Waits until the summary datasets of {@code job} fit in the heap budget. */
+    void admit(Job job) throws InterruptedException {
+      for (SummaryKey key : job.summaryKeys()) {
+        if (!admittedKib.containsKey(key)) {
+          admittedKib.put(key, acquireHeapBudget(estimateKib(key)));
+        }
+      }
+      numRunningJobs.incrementAndGet();
+    }
+
+    Map<Integer, Map<Boolean, Integer>> get(SummaryKey key) {
+      return getDataset(key)
+          .getSummaryDatasetForMoodAndPlatform(key.mood(), key.replication().platform());
+    }
+
+    /** Releases the summary datasets that no job admitted after {@code job} uses. */
+    void release(Job job) {
+      for (SummaryKey key : job.summaryKeys()) {
+        if (remainingUses.get(key).decrementAndGet() == 0) {
+          getDataset(key)
+              .releaseSummaryDatasetForMoodAndPlatform(key.mood(), key.replication().platform());
+          heapBudget.release(admittedKib.remove(key));
+        }
+      }
+      numRunningJobs.decrementAndGet();
+    }
+
+    /** Returns the number of KiB acquired, which is 0 when running over budget. */
+    private int acquireHeapBudget(int kib) throws InterruptedException {
+      while (!heapBudget.tryAcquire(kib, ADMISSION_POLL_MILLIS, MILLISECONDS)) {
+        if (numRunningJobs.get() == 0) {
+          // The budget is only held by summary datasets of jobs yet to be admitted, and waiting
+          // would never end: runs over budget instead.
+          return heapBudget.tryAcquire(kib) ? kib : 0;
+        }
+      }
+      return kib;
+    }
+
+    /**
+     * Estimates the size of a summary dataset: an entry per item, and a second annotation on items
+     * that some raters picked the mood for and some did not.
+     */
+    private int estimateKib(SummaryKey key) {
+      String platform = key.replication().platform();
+      IRepDataset dataset = getDataset(key);
+      long numItems = dataset.getNumItemsForPlatform(platform);
+      long numPositiveEntries = dataset.getNumEntriesForMoodAndPlatform(key.mood(), platform);
+      long bytes =
+          numItems * SUMMARY_BYTES_PER_ITEM
+              + Math.min(numItems, numPositiveEntries) * SUMMARY_BYTES_PER_EXTRA_ANNOTATION;
+      // Caps oversized summary datasets at the whole budget, so that they can still be admitted.
+      return (int) Math.min(heapBudgetKib, bytes / 1024 + 1);
+    }
+
+    private IRepDataset getDataset(SummaryKey key) {
+      return datasets.get(key.replication().datasetPath());
+    }
+  }
+
+  private BatchRunner() {}
+}
@@ -17,28 +17,54 @@ package com.google.likert.xrr;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.likert.xrr.IRepDatasetEntry.Mood;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Example of xRR Score computation using <a
  * href="https://github.com/google-research-datasets/replication-dataset">IRep Dataset</a>
+ *
+ * <p>Entries are indexed at construction: platforms are interned to ints, and entries of each
+ * platform are stored in columns of item ids and mood bitmasks. Sub-datasets are views over these
+ * columns, and summary datasets are built on first use and cached.
  */
 public final class IRepDataset {
 
-  private final ImmutableList<IRepDatasetEntry> fullDataset;
+  private final ImmutableList<String> platforms;
+  private final ImmutableMap<String, Integer> platformIndices;
+  private final ImmutableList<PlatformPartition> partitions;
+  /** Summary datasets keyed by {@link #summaryKey}, built by the first thread that runs them. */
+  private final Map<Integer, FutureTask<Map<Integer, Map<Boolean, Integer>>>> summaryDatasets =
+      new ConcurrentHashMap<>();
 
   public IRepDataset(ImmutableList<IRepDatasetEntry> fullDataset) {
-    this.fullDataset = fullDataset;
+    this(builderOf(fullDataset));
+  }
+
+  private IRepDataset(Builder builder) {
+    this.platforms = ImmutableList.copyOf(builder.platformIndices.keySet());
+    this.platformIndices = ImmutableMap.copyOf(builder.platformIndices);
+    this.partitions = builder.columns.stream().map(Columns::toPartition).collect(toImmutableList());
   }
 
   public ImmutableSet<Pair<String, String>> getAllPlatformCombinations() {
-    ImmutableList<String> platforms =
-        fullDataset.stream().map(IRepDatasetEntry::platform).distinct().collect(toImmutableList());
     ImmutableSet.Builder<Pair<String, String>> platformPairs = new ImmutableSet.Builder<>();
     for (int i = 0; i < platforms.size(); i++) {
       for (int j = 0; j < platforms.size(); j++) {
@@ -50,14 +76,90 @@ public final class IRepDataset {
     return platformPairs.build();
   }
 
-  public ImmutableList<Pair<Integer, Boolean>> getSubDatasetForMoodAndPlatform(
+  /**
+   * Returns a view of the ratings of {@code platform}, each a pair of item id and whether the rater
+   * picked {@code mood}.
+   */
+  public List<Pair<Integer, Boolean>> getSubDatasetForMoodAndPlatform(Mood mood, String platform) {
+    Integer platformIndex = platformIndices.get(platform);
+    if (platformIndex == null) {
+      return ImmutableList.of();
+    }
+    PlatformPartition partition = partitions.get(platformIndex);
+    int moodBit = moodBit(mood);
+    return new AbstractList<Pair<Integer, Boolean>>() {
+      @Override
+      public Pair<Integer, Boolean> get(int row) {
+        return Pair.of(partition.itemIds[row], (partition.moodMasks[row] & moodBit) != 0);
+      }
+
+      @Override
+      public int size() {
+        return partition.itemIds.length;
+      }
+    };
+  }
+
+  /**
+   * Returns the summary dataset of {@link #getSubDatasetForMoodAndPlatform}, which maps each item
+   * id to the number of raters that did and did not pick {@code mood}. Built on first use and
+   * cached; concurrent callers wait for the same build.
+   */
+  public Map<Integer, Map<Boolean, Integer>> getSummaryDatasetForMoodAndPlatform(
       Mood mood, String platform) {
-    return fullDataset.stream()
-        .filter(iRepDatasetEntry -> iRepDatasetEntry.platform().equals(platform))
-        .map(
-            iRepDatasetEntry ->
-                Pair.of(iRepDatasetEntry.itemId(), iRepDatasetEntry.scores().contains(mood)))
-        .collect(toImmutableList());
+    Integer platformIndex = platformIndices.get(platform);
+    if (platformIndex == null) {
+      return ImmutableMap.of();
+    }
+    int summaryKey = summaryKey(mood, platformIndex);
+    FutureTask<Map<Integer, Map<Boolean, Integer>>> summaryDataset =
+        summaryDatasets.computeIfAbsent(
+            summaryKey,
+            key ->
+                new FutureTask<>(
+                    () -> buildSummaryDataset(partitions.get(platformIndex), moodBit(mood))));
+    // Builds outside of the map, which would otherwise lock other keys of the same bin meanwhile.
+    // Does nothing if another thread already built it, or is building it.
+    summaryDataset.run();
+    try {
+      return Uninterruptibles.getUninterruptibly(summaryDataset);
+    } catch (ExecutionException e) {
+      summaryDatasets.remove(summaryKey, summaryDataset);
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Drops the cached summary dataset of {@link #getSummaryDatasetForMoodAndPlatform}, so that its
+   * memory can be reclaimed once it is no longer used. It is built again if requested again.
+   */
+  public void releaseSummaryDatasetForMoodAndPlatform(Mood mood, String platform) {
+    Integer platformIndex = platformIndices.get(platform);
+    if (platformIndex != null) {
+      summaryDatasets.remove(summaryKey(mood, platformIndex));
+    }
+  }
+
+  /** Returns the number of distinct items rated on {@code platform}. */
+  public int getNumItemsForPlatform(String platform) {
+    Integer platformIndex = platformIndices.get(platform);
+    return platformIndex == null ? 0 : partitions.get(platformIndex).getNumItems();
+  }
+
+  /** Returns the number of ratings of {@code platform} in which the rater picked {@code mood}. */
+  public int getNumEntriesForMoodAndPlatform(Mood mood, String platform) {
+    Integer platformIndex = platformIndices.get(platform);
+    if (platformIndex == null) {
+      return 0;
+    }
+    int moodBit = moodBit(mood);
+    int numEntries = 0;
+    for (int moodMask : partitions.get(platformIndex).moodMasks) {
+      if ((moodMask & moodBit) != 0) {
+        numEntries++;
+      }
+    }
+    return numEntries;
   }
 
   public static IRepDataset fromCsvFile(Reader reader) throws IOException {
@@ -67,4 +169,134 @@ public final class IRepDataset {
             .map(IRepDatasetEntry::fromCsvEntry)
             .collect(toImmutableList()));
   }
+
+  private static Builder builderOf(ImmutableList<IRepDatasetEntry> fullDataset) {
+    Builder builder = new Builder();
+    for (IRepDatasetEntry iRepDatasetEntry : fullDataset) {
+      int moodMask = 0;
+      for (Mood mood : iRepDatasetEntry.scores()) {
+        moodMask |= moodBit(mood);
+      }
+      builder.add(iRepDatasetEntry.itemId(), iRepDatasetEntry.platform(), moodMask);
+    }
+    return builder;
+  }
+
+  private static Map<Integer, Map<Boolean, Integer>> buildSummaryDataset(
+      PlatformPartition partition, int moodBit) {
+    Map<Integer, Map<Boolean, Integer>> summaryDataset = new HashMap<>();
+    for (int row = 0; row < partition.itemIds.length; row++) {
+      summaryDataset
+          .computeIfAbsent(partition.itemIds[row], itemId -> new HashMap<>(4))
+          .merge((partition.moodMasks[row] & moodBit) != 0, 1, Integer::sum);
+    }
+    return Collections.unmodifiableMap(summaryDataset);
+  }
+
+  private static int summaryKey(Mood mood, int platformIndex) {
+    return platformIndex * Mood.values().length + mood.ordinal();
+  }
+
+  private static int moodBit(Mood mood) {
+    return 1 << mood.ordinal();
+  }
+
+  /**
+   * Builds an {@link IRepDataset} from entries given as columns, e.g. a partial dataset per range
+   * of a file that are then concatenated in file order.
+   */
+  static final class Builder {
+    /** Indices of platforms into {@link #columns}, in order of first appearance. */
+    private final Map<String, Integer> platformIndices = new LinkedHashMap<>();
+    private final List<Columns> columns = new ArrayList<>();
+
+    /** Adds an entry whose moods are a bitmask of {@link #moodBit}. */
+    void add(int itemId, String platform, int moodMask) {
+      columns(platform).add(itemId, moodMask);
+    }
+
+    /** Adds an entry from a line of an IRep dataset CSV file. */
+    void addCsvEntry(String[] csvEntry) {
+      add(
+          Integer.parseInt(csvEntry[IRepDatasetEntry.CSV_ITEM_ID_INDEX]),
+          csvEntry[IRepDatasetEntry.CSV_PLATFORM_INDEX],
+          IRepDatasetEntry.moodMaskFromCsvEntry(csvEntry));
+    }
+
+    /** Appends the entries of {@code other} after the entries of this builder. */
+    void addAll(Builder other) {
+      other.platformIndices.forEach(
+          (platform, platformIndex) -> columns(platform).addAll(other.columns.get(platformIndex)));
+    }
+
+    IRepDataset build() {
+      return new IRepDataset(this);
+    }
+
+    private Columns columns(String platform) {
+      Integer platformIndex = platformIndices.get(platform);
+      if (platformIndex == null) {
+        platformIndex = columns.size();
+        platformIndices.put(platform, platformIndex);
+        columns.add(new Columns());
+      }
+      return columns.get(platformIndex);
+    }
+  }
+
+  /** Growable columns of the entries of a platform, while building. */
+  private static final class Columns {
+    private int[] itemIds = new int[16];
+    private int[] moodMasks = new int[16];
+    private int size;
+
+    void add(int itemId, int moodMask) {
+      ensureCapacity(size + 1);
+      itemIds[size] = itemId;
+      moodMasks[size] = moodMask;
+      size++;
+    }
+
+    void addAll(Columns other) {
+      ensureCapacity(size + other.size);
+      System.arraycopy(other.itemIds, 0, itemIds, size, other.size);
+      System.arraycopy(other.moodMasks, 0, moodMasks, size, other.size);
+      size += other.size;
+    }
+
+    PlatformPartition toPartition() {
+      return new PlatformPartition(Arrays.copyOf(itemIds, size), Arrays.copyOf(moodMasks, size));
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > itemIds.length) {
+        int newCapacity = Math.max(capacity, 2 * itemIds.length);
+        itemIds = Arrays.copyOf(itemIds, newCapacity);
+        moodMasks = Arrays.copyOf(moodMasks, newCapacity);
+      }
+    }
+  }
+
+  /** Columns of the entries of a platform, with moods as bitmasks of {@link #moodBit}. */
+  private static final class PlatformPartition {
+    final int[] itemIds;
+    final int[] moodMasks;
+    /** Number of distinct item ids, or -1 until first requested. */
+    private volatile int numItems = -1;
+
+    PlatformPartition(int[] itemIds, int[] moodMasks) {
+      this.itemIds = itemIds;
+      this.moodMasks = moodMasks;
+    }
+
+    int getNumItems() {
+      int numItems = this.numItems;
+      if (numItems < 0) {
+        // Racing threads compute the same count, so no lock is needed.
+        numItems = (int) Arrays.stream(itemIds).sorted().distinct().count();
+        this.numItems = numItems;
+      }
+      return numItems;
+    }
+  }
 }
@@ -20,8 +20,8 @@ import com.google.common.collect.ImmutableSet;
 /** Value class representing an entry of IRep Dataset. */
 @AutoValue
 public abstract class IRepDatasetEntry {
-  private static final int CSV_ITEM_ID_INDEX = 0;
-  private static final int CSV_PLATFORM_INDEX = 1;
+  static final int CSV_ITEM_ID_INDEX = 0;
+  static final int CSV_PLATFORM_INDEX = 1;
   private static final int CSV_RATER_ID_INDEX = 2;
   private static final int CSV_MOOD_INDEX_OFFSET = 3;
 
@@ -33,7 +33,7 @@ public abstract class IRepDatasetEntry {
 
   public abstract ImmutableSet<Mood> scores();
 
-  /** Moods in IRep dataset. */
+  /** Moods in IRep dataset. There are at most 32, so that a set of moods fits in an int. */
   public enum Mood {
     AMUSEMENT,
     ANGER,
@@ -85,4 +85,18 @@ public abstract class IRepDatasetEntry {
 
     return new AutoValue_IRepDatasetEntry(itemId, platform, raterId, moodRatings);
   }
+
+  /**
+   * Returns the moods picked in {@code csvEntry} as a bitmask, in which bit {@code mood.ordinal()}
+   * is set for each picked mood, without building an entry.
+   */
+  static int moodMaskFromCsvEntry(String[] csvEntry) {
+    int moodMask = 0;
+    for (int moodEnumIndex = 0; moodEnumIndex < Mood.values().length; moodEnumIndex++) {
+      if (csvEntry[moodEnumIndex + CSV_MOOD_INDEX_OFFSET].equals("1")) {
+        moodMask |= 1 << moodEnumIndex;
+      }
+    }
+    return moodMask;
+  }
 }
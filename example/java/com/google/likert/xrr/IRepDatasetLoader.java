@@ -0,0 +1,195 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads IRep dataset CSV files on all processors.
+ *
+ * <p>Each file is split into byte ranges, and each range is parsed on its own thread straight into
+ * columns of item ids and mood bitmasks per platform, which are concatenated in file order at the
+ * end. A range owns the records that start within it: it skips the partial record at its start,
+ * and reads past its end to finish its last record. This relies on records being separated by
+ * newlines that never appear within a field, which holds for IRep datasets. Ranges of all files
+ * share the same threads and are sized on their total bytes, so loading many files at once scales
+ * with the number of processors.
+ */
+public final class IRepDatasetLoader {
+
+  /** Smallest byte range parsed by a single task. */
+  private static final long MIN_RANGE_BYTES = 1 << 20;
+  /** Number of ranges per processor, so that uneven ranges still keep every processor busy. */
+  private static final int RANGES_PER_PROCESSOR = 4;
+
+  /** Loads the IRep dataset CSV file at {@code path}, including its header line. */
+  public static IRepDataset loadCsvFile(Path path) throws IOException, InterruptedException {
+    return loadCsvFiles(ImmutableList.of(path)).get(path);
+  }
+
+  /** Loads the IRep dataset CSV files at {@code paths}, each including its header line. */
+  public static ImmutableMap<Path, IRepDataset> loadCsvFiles(Collection<Path> paths)
+      throws IOException, InterruptedException {
+    long totalSize = 0;
+    for (Path path : paths) {
+      totalSize += Files.size(path);
+    }
+    int numProcessors = Runtime.getRuntime().availableProcessors();
+    return loadCsvFiles(
+        paths,
+        Math.max(MIN_RANGE_BYTES, totalSize / ((long) numProcessors * RANGES_PER_PROCESSOR) + 1));
+  }
+
+  /**
+   * Loads the IRep dataset CSV files at {@code paths}, each including its header line, parsing
+   * ranges of {@code rangeBytes} bytes.
+   */
+  static ImmutableMap<Path, IRepDataset> loadCsvFiles(Collection<Path> paths, long rangeBytes)
+      throws IOException, InterruptedException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      Map<Path, List<Future<IRepDataset.Builder>>> partialDatasets = new LinkedHashMap<>();
+      for (Path path : paths) {
+        long fileSize = Files.size(path);
+        List<Future<IRepDataset.Builder>> ranges = new ArrayList<>();
+        for (long start = 0; start < fileSize; start += rangeBytes) {
+          long rangeStart = start;
+          long rangeEnd = Math.min(fileSize, start + rangeBytes);
+          ranges.add(executor.submit(() -> parseRange(path, rangeStart, rangeEnd)));
+        }
+        partialDatasets.put(path, ranges);
+      }
+
+      ImmutableMap.Builder<Path, IRepDataset> datasets = ImmutableMap.builder();
+      for (Entry<Path, List<Future<IRepDataset.Builder>>> entry : partialDatasets.entrySet()) {
+        IRepDataset.Builder fullDataset = new IRepDataset.Builder();
+        for (Future<IRepDataset.Builder> range : entry.getValue()) {
+          fullDataset.addAll(getResult(range));
+        }
+        datasets.put(entry.getKey(), fullDataset.build());
+      }
+      return datasets.build();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Parses the records of {@code path} that start in [{@code start}, {@code end}). */
+  private static IRepDataset.Builder parseRange(Path path, long start, long end)
+      throws IOException {
+    IRepDataset.Builder entries = new IRepDataset.Builder();
+    CSVParser csvParser = new CSVParserBuilder().build();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // Starts one byte early, so that a record starting exactly at start is not skipped.
+      LineReader lineReader = new LineReader(channel, start == 0 ? 0 : start - 1);
+      // Skips the header line, or the end of a record owned by the previous range.
+      lineReader.readLine();
+      String line;
+      while (lineReader.position() < end && (line = lineReader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          entries.addCsvEntry(csvParser.parseLine(line));
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** Reads UTF-8 lines from a file channel, keeping track of the file position. */
+  private static final class LineReader {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private byte[] line = new byte[256];
+    private long position;
+
+    LineReader(FileChannel channel, long position) throws IOException {
+      this.channel = channel;
+      this.position = position;
+      channel.position(position);
+      buffer.flip();
+    }
+
+    /** Returns the file position of the next line. */
+    long position() {
+      return position;
+    }
+
+    /** Returns the next line without its line terminator, or null at the end of the file. */
+    String readLine() throws IOException {
+      int length = 0;
+      while (true) {
+        if (!buffer.hasRemaining()) {
+          buffer.clear();
+          int numRead = channel.read(buffer);
+          buffer.flip();
+          if (numRead <= 0) {
+            return length == 0 ? null : decode(length);
+          }
+        }
+        byte b = buffer.get();
+        position++;
+        if (b == '\n') {
+          return decode(length);
+        }
+        if (length == line.length) {
+          line = Arrays.copyOf(line, 2 * length);
+        }
+        line[length++] = b;
+      }
+    }
+
+    private String decode(int length) {
+      if (length > 0 && line[length - 1] == '\r') {
+        length--;
+      }
+      return new String(line, 0, length, UTF_8);
+    }
+  }
+
+  private IRepDatasetLoader() {}
+}
@@ -15,28 +15,37 @@
 package com.google.likert.xrr;
 
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.likert.xrr.IRepDatasetEntry.Mood;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 
 /** Main class for process IRep dataset with xRR library. */
 public final class Main {
 
-  public static void main(String[] args) throws IOException {
+  public static void main(String[] args) throws IOException, InterruptedException {
     if (args.length == 0) {
       System.err.println(
           "ERROR: Please put IRep Dataset's csv file as the first argument of the program.");
       return;
     }
+    if (args[0].equals("--batch")) {
+      if (args.length != 3) {
+        System.err.println("ERROR: Usage: --batch /path/to/job_spec.csv /path/to/output.csv");
+        return;
+      }
+      int numFailedJobs = BatchRunner.run(Paths.get(args[1]), Paths.get(args[2]));
+      if (numFailedJobs > 0) {
+        System.err.printf("ERROR: %d jobs failed.%n", numFailedJobs);
+        System.exit(1);
+      }
+      return;
+    }
     String datasetPath = args[0];
 
-    IRepDataset fullDataset =
-        IRepDataset.fromCsvFile(Files.newBufferedReader(Paths.get(datasetPath), UTF_8));
+    IRepDataset fullDataset = IRepDatasetLoader.loadCsvFile(Paths.get(datasetPath));
 
     // Example in the Cross-replication Reliability paper.
     printScoresForMood(fullDataset, Mood.CONTEMPLATION);
@@ -63,9 +72,10 @@ public final class Main {
             platformPair ->
                 Pair.of(
                     platformPair,
-                    XrrProcessor.computeXrrWithRawDatasets(
-                        fullDataset.getSubDatasetForMoodAndPlatform(mood, platformPair.first),
-                        fullDataset.getSubDatasetForMoodAndPlatform(mood, platformPair.second),
+                    XrrProcessor.computeXrrWithSummaryDatasets(
+                        fullDataset.getSummaryDatasetForMoodAndPlatform(mood, platformPair.first),
+                        fullDataset.getSummaryDatasetForMoodAndPlatform(
+                            mood, platformPair.second),
                         DistanceFunctions.NOMINAL,
                         XrrMetrics.WITH_MISSING_DATA)))
         .collect(toImmutableMap(Pair::getFirst, Pair::getSecond));
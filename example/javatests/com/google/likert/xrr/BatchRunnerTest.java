@@ -0,0 +1,99 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.IRepTestData.header;
+import static com.google.likert.xrr.IRepTestData.rating;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.likert.xrr.BatchRunner.Job;
+import com.google.likert.xrr.IRepDatasetEntry.Mood;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link BatchRunner}. */
+@RunWith(JUnit4.class)
+public final class BatchRunnerTest {
+
+  @Test
+  public void groupJobs_duplicatedAndSwappedJobs_shareCanonicalJob() {
+    Job job = job("a.csv,Budapest,a.csv,Mexico,LOVE,NOMINAL");
+    Job swappedJob = job("a.csv,Mexico,a.csv,Budapest,LOVE,NOMINAL");
+    Job otherMoodJob = job("a.csv,Mexico,a.csv,Budapest,AWE,NOMINAL");
+
+    ImmutableListMultimap<Job, Job> jobsByCanonicalJob =
+        BatchRunner.groupJobs(ImmutableList.of(job, swappedJob, job, otherMoodJob));
+
+    assertThat(jobsByCanonicalJob.keySet())
+        .containsExactly(otherMoodJob.canonical(), job)
+        .inOrder();
+    assertThat(jobsByCanonicalJob.get(job)).containsExactly(job, swappedJob, job).inOrder();
+  }
+
+  @Test
+  public void fromCsvEntry_unknownMood_namesOffendingLine() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> job("a.csv,Budapest,a.csv,Mexico,LUV,NOMINAL"));
+
+    assertThat(e.getMessage()).contains("a.csv,Budapest,a.csv,Mexico,LUV,NOMINAL");
+  }
+
+  @Test
+  public void run_writesOneLinePerOriginalJob() throws IOException, InterruptedException {
+    Path datasetPath = Files.createTempFile("irep", ".csv");
+    Path jobSpecPath = Files.createTempFile("jobs", ".csv");
+    Path outputPath = Files.createTempFile("output", ".csv");
+    for (Path path : ImmutableList.of(datasetPath, jobSpecPath, outputPath)) {
+      path.toFile().deleteOnExit();
+    }
+    Files.write(
+        datasetPath,
+        ImmutableList.of(
+            header(),
+            rating(1, "Budapest", 1, Mood.LOVE),
+            rating(1, "Budapest", 2, Mood.LOVE),
+            rating(2, "Budapest", 1),
+            rating(2, "Budapest", 2, Mood.LOVE),
+            rating(1, "Mexico", 3, Mood.LOVE),
+            rating(1, "Mexico", 4),
+            rating(2, "Mexico", 3),
+            rating(2, "Mexico", 4)),
+        UTF_8);
+    String job = datasetPath + ",Budapest," + datasetPath + ",Mexico,LOVE,NOMINAL";
+    String swappedJob = datasetPath + ",Mexico," + datasetPath + ",Budapest,LOVE,NOMINAL";
+    Files.write(jobSpecPath, ImmutableList.of(job, "# comment", swappedJob, job), UTF_8);
+
+    int numFailedJobs = BatchRunner.run(jobSpecPath, outputPath);
+
+    // Half of the pairs of ratings on each item disagree, against 10 of 16 pairs by chance.
+    assertThat(numFailedJobs).isEqualTo(0);
+    assertThat(Files.readAllLines(outputPath, UTF_8))
+        .containsExactly(job + ",0.2000", swappedJob + ",0.2000", job + ",0.2000");
+  }
+
+  private static Job job(String csvLine) {
+    return Job.fromCsvEntry(csvLine.split(","));
+  }
+}
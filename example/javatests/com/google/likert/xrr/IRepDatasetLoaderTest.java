@@ -0,0 +1,128 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.likert.xrr;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.IRepTestData.header;
+import static com.google.likert.xrr.IRepTestData.rating;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.likert.xrr.IRepDatasetEntry.Mood;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link IRepDatasetLoader}. */
+@RunWith(JUnit4.class)
+public final class IRepDatasetLoaderTest {
+
+  private static final ImmutableList<String> LINES =
+      ImmutableList.of(
+          header(),
+          rating(1, "Budapest", 1, Mood.LOVE, Mood.AWE),
+          rating(1, "Mexico", 2, Mood.LOVE),
+          rating(22, "Budapest", 1),
+          rating(1, "Budapest", 3, Mood.AWE),
+          rating(3, "KualaLumpur", 4, Mood.ANGER),
+          rating(22, "Mexico", 2, Mood.LOVE, Mood.ANGER),
+          rating(22, "Budapest", 5, Mood.LOVE),
+          rating(333, "Budapest", 1, Mood.AMUSEMENT));
+
+  @Test
+  public void loadCsvFiles_rangeStartsExactlyAtRecord_matchesFromCsvFile()
+      throws IOException, InterruptedException {
+    String contents = String.join("\n", LINES) + "\n";
+    // The second range starts on the first byte of the first record.
+    long rangeBytes = header().length() + 1;
+
+    assertLoadsLikeFromCsvFile(contents, rangeBytes);
+  }
+
+  @Test
+  public void loadCsvFiles_everyRangeSize_matchesFromCsvFile()
+      throws IOException, InterruptedException {
+    String contents = String.join("\n", LINES) + "\n";
+
+    for (long rangeBytes = 1; rangeBytes <= contents.length(); rangeBytes++) {
+      assertLoadsLikeFromCsvFile(contents, rangeBytes);
+    }
+  }
+
+  @Test
+  public void loadCsvFiles_crlfLineEndings_matchesFromCsvFile()
+      throws IOException, InterruptedException {
+    String contents = String.join("\r\n", LINES) + "\r\n";
+
+    // Includes ranges that start on the '\n' of a line ending, right after its '\r'.
+    for (long rangeBytes = 1; rangeBytes <= contents.length(); rangeBytes++) {
+      assertLoadsLikeFromCsvFile(contents, rangeBytes);
+    }
+  }
+
+  @Test
+  public void loadCsvFiles_noTrailingNewline_matchesFromCsvFile()
+      throws IOException, InterruptedException {
+    String contents = String.join("\n", LINES);
+
+    for (long rangeBytes = 1; rangeBytes <= contents.length(); rangeBytes++) {
+      assertLoadsLikeFromCsvFile(contents, rangeBytes);
+    }
+  }
+
+  private static void assertLoadsLikeFromCsvFile(String contents, long rangeBytes)
+      throws IOException, InterruptedException {
+    Path path = Files.createTempFile("irep", ".csv");
+    path.toFile().deleteOnExit();
+    Files.write(path, contents.getBytes(UTF_8));
+
+    IRepDataset expected = IRepDataset.fromCsvFile(new StringReader(contents));
+    IRepDataset actual =
+        IRepDatasetLoader.loadCsvFiles(ImmutableList.of(path), rangeBytes).get(path);
+
+    assertThat(platformCombinations(actual))
+        .containsExactlyElementsIn(platformCombinations(expected))
+        .inOrder();
+    for (String platform : ImmutableSet.of("Budapest", "Mexico", "KualaLumpur")) {
+      for (Mood mood : ImmutableList.of(Mood.AMUSEMENT, Mood.ANGER, Mood.AWE, Mood.LOVE)) {
+        List<Pair<Integer, Boolean>> expectedSubDataset =
+            expected.getSubDatasetForMoodAndPlatform(mood, platform);
+        List<Pair<Integer, Boolean>> actualSubDataset =
+            actual.getSubDatasetForMoodAndPlatform(mood, platform);
+        assertThat(actualSubDataset).hasSize(expectedSubDataset.size());
+        for (int row = 0; row < expectedSubDataset.size(); row++) {
+          assertThat(actualSubDataset.get(row).getFirst())
+              .isEqualTo(expectedSubDataset.get(row).getFirst());
+          assertThat(actualSubDataset.get(row).getSecond())
+              .isEqualTo(expectedSubDataset.get(row).getSecond());
+        }
+      }
+    }
+  }
+
+  private static ImmutableList<String> platformCombinations(IRepDataset dataset) {
+    return dataset.getAllPlatformCombinations().stream()
+        .map(platformPair -> platformPair.getFirst() + "," + platformPair.getSecond())
+        .collect(toImmutableList());
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.likert.xrr;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.IRepTestData.header;
+import static com.google.likert.xrr.IRepTestData.rating;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.summingInt;
+
+import com.google.common.collect.ImmutableList;
+import com.google.likert.xrr.IRepDatasetEntry.Mood;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link IRepDataset}. */
+@RunWith(JUnit4.class)
+public final class IRepDatasetTest {
+
+  private static final ImmutableList<String> LINES =
+      ImmutableList.of(
+          header(),
+          rating(1, "Budapest", 1, Mood.LOVE, Mood.AWE),
+          rating(1, "Mexico", 2, Mood.LOVE),
+          rating(2, "Budapest", 1),
+          rating(1, "Budapest", 3, Mood.AWE),
+          rating(3, "KualaLumpur", 4, Mood.ANGER),
+          rating(2, "Mexico", 2, Mood.LOVE, Mood.ANGER),
+          rating(2, "Budapest", 5, Mood.LOVE),
+          rating(3, "Budapest", 1, Mood.AMUSEMENT));
+
+  @Test
+  public void getSubDatasetForMoodAndPlatform_matchesFilteredEntries() throws IOException {
+    IRepDataset dataset = IRepDataset.fromCsvFile(new StringReader(String.join("\n", LINES)));
+
+    for (String platform : ImmutableList.of("Budapest", "Mexico", "KualaLumpur")) {
+      for (Mood mood : Mood.values()) {
+        List<Pair<Integer, Boolean>> subDataset =
+            dataset.getSubDatasetForMoodAndPlatform(mood, platform);
+        List<Pair<Integer, Boolean>> expected = filterEntries(mood, platform);
+
+        assertThat(subDataset).hasSize(expected.size());
+        for (int row = 0; row < expected.size(); row++) {
+          assertThat(subDataset.get(row).getFirst()).isEqualTo(expected.get(row).getFirst());
+          assertThat(subDataset.get(row).getSecond()).isEqualTo(expected.get(row).getSecond());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getSummaryDatasetForMoodAndPlatform_matchesSummarizedEntries() throws IOException {
+    IRepDataset dataset = IRepDataset.fromCsvFile(new StringReader(String.join("\n", LINES)));
+
+    for (String platform : ImmutableList.of("Budapest", "Mexico", "KualaLumpur")) {
+      for (Mood mood : Mood.values()) {
+        assertThat(dataset.getSummaryDatasetForMoodAndPlatform(mood, platform))
+            .isEqualTo(summarize(filterEntries(mood, platform)));
+      }
+    }
+    assertThat(dataset.getNumItemsForPlatform("Budapest")).isEqualTo(3);
+    assertThat(dataset.getNumEntriesForMoodAndPlatform(Mood.LOVE, "Budapest")).isEqualTo(2);
+  }
+
+  @Test
+  public void unknownPlatform_isEmpty() throws IOException {
+    IRepDataset dataset = IRepDataset.fromCsvFile(new StringReader(String.join("\n", LINES)));
+
+    assertThat(dataset.getSubDatasetForMoodAndPlatform(Mood.LOVE, "Paris")).isEmpty();
+    assertThat(dataset.getSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Paris")).isEmpty();
+    assertThat(dataset.getNumItemsForPlatform("Paris")).isEqualTo(0);
+    assertThat(dataset.getNumEntriesForMoodAndPlatform(Mood.LOVE, "Paris")).isEqualTo(0);
+    dataset.releaseSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Paris");
+  }
+
+  @Test
+  public void getSummaryDatasetForMoodAndPlatform_fromManyThreads_buildsOnce() throws IOException {
+    IRepDataset dataset = IRepDataset.fromCsvFile(new StringReader(String.join("\n", LINES)));
+    Set<Map<Integer, Map<Boolean, Integer>>> summaryDatasets =
+        Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    IntStream.range(0, 1000)
+        .parallel()
+        .forEach(
+            i ->
+                summaryDatasets.add(
+                    dataset.getSummaryDatasetForMoodAndPlatform(
+                        Mood.values()[i % 2], i % 3 == 0 ? "Mexico" : "Budapest")));
+
+    assertThat(summaryDatasets).hasSize(4);
+  }
+
+  @Test
+  public void releaseSummaryDatasetForMoodAndPlatform_buildsAgainOnNextRequest()
+      throws IOException {
+    IRepDataset dataset = IRepDataset.fromCsvFile(new StringReader(String.join("\n", LINES)));
+    Map<Integer, Map<Boolean, Integer>> summaryDataset =
+        dataset.getSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Budapest");
+
+    assertThat(dataset.getSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Budapest"))
+        .isSameInstanceAs(summaryDataset);
+    dataset.releaseSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Budapest");
+    Map<Integer, Map<Boolean, Integer>> rebuiltSummaryDataset =
+        dataset.getSummaryDatasetForMoodAndPlatform(Mood.LOVE, "Budapest");
+
+    assertThat(rebuiltSummaryDataset).isNotSameInstanceAs(summaryDataset);
+    assertThat(rebuiltSummaryDataset).isEqualTo(summaryDataset);
+  }
+
+  /** Returns the sub-dataset of {@code mood} and {@code platform} by filtering parsed entries. */
+  private static List<Pair<Integer, Boolean>> filterEntries(Mood mood, String platform) {
+    return LINES.stream()
+        .skip(1)
+        .map(line -> IRepDatasetEntry.fromCsvEntry(line.split(",")))
+        .filter(entry -> entry.platform().equals(platform))
+        .map(entry -> Pair.of(entry.itemId(), entry.scores().contains(mood)))
+        .collect(toImmutableList());
+  }
+
+  private static Map<Integer, Map<Boolean, Integer>> summarize(
+      List<Pair<Integer, Boolean>> subDataset) {
+    return subDataset.stream()
+        .collect(groupingBy(Pair::getFirst, groupingBy(Pair::getSecond, summingInt(pair -> 1))));
+  }
+}
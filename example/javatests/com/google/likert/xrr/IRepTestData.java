@@ -0,0 +1,47 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.likert.xrr;
+
+import com.google.common.collect.ImmutableList;
+import com.google.likert.xrr.IRepDatasetEntry.Mood;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Lines of IRep dataset CSV files shared by the tests of the example. */
+final class IRepTestData {
+
+  /** Returns the header line of an IRep dataset CSV file. */
+  static String header() {
+    List<String> columns = new ArrayList<>(ImmutableList.of("item", "platform", "rater"));
+    for (Mood mood : Mood.values()) {
+      columns.add(mood.name());
+    }
+    return String.join(",", columns);
+  }
+
+  /** Returns the line of a rating in which {@code rater} picked {@code moods} for an item. */
+  static String rating(int itemId, String platform, int rater, Mood... moods) {
+    List<String> columns =
+        new ArrayList<>(
+            ImmutableList.of(String.valueOf(itemId), platform, String.valueOf(rater)));
+    for (Mood mood : Mood.values()) {
+      columns.add(ImmutableList.copyOf(moods).contains(mood) ? "1" : "0");
+    }
+    return String.join(",", columns);
+  }
+
+  private IRepTestData() {}
+}
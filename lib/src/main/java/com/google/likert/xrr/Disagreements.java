@@ -0,0 +1,92 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/** Disagreement terms shared by the xRR computations in this package. */
+final class Disagreements {
+
+  /** Returns the number of annotations in {@code annotationCountDict}, 0 if it is null. */
+  static <AnnotationT> int countAnnotations(Map<AnnotationT, Integer> annotationCountDict) {
+    if (annotationCountDict == null) {
+      return 0;
+    }
+    return annotationCountDict.values().stream().mapToInt(x -> x).sum();
+  }
+
+  /**
+   * Returns the sum of distances over all pairs of annotations in {@code annotationCountDictX} and
+   * {@code annotationCountDictY}, each pair weighted by the product of their counts.
+   */
+  static <AnnotationT> double sumDistance(
+      Map<AnnotationT, ? extends Number> annotationCountDictX,
+      Map<AnnotationT, ? extends Number> annotationCountDictY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    double sumDistance = 0;
+    for (Entry<AnnotationT, ? extends Number> entryX : annotationCountDictX.entrySet()) {
+      double annotationCountX = entryX.getValue().doubleValue();
+      AnnotationT annotationX = entryX.getKey();
+      for (Entry<AnnotationT, ? extends Number> entryY : annotationCountDictY.entrySet()) {
+        double annotationCountY = entryY.getValue().doubleValue();
+        AnnotationT annotationY = entryY.getKey();
+        double distance = distanceFunction.computeDistance(annotationX, annotationY);
+        sumDistance += distance * annotationCountX * annotationCountY;
+      }
+    }
+    return sumDistance;
+  }
+
+  /**
+   * Returns the contribution of a single item to the (unnormalized) observed disagreement, i.e. the
+   * item's weighted sum of distances scaled by {@code (n_x + n_y) / (n_x * n_y)}.
+   */
+  static <AnnotationT> double marginalObservedDisagreement(
+      Map<AnnotationT, Integer> annotationCountDictX,
+      Map<AnnotationT, Integer> annotationCountDictY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    int numAnnotationsOfItemOnX = countAnnotations(annotationCountDictX);
+    int numAnnotationsOfItemOnY = countAnnotations(annotationCountDictY);
+    return marginalObservedDisagreement(
+        sumDistance(annotationCountDictX, annotationCountDictY, distanceFunction),
+        numAnnotationsOfItemOnX,
+        numAnnotationsOfItemOnY);
+  }
+
+  /** Scales an item's weighted sum of distances into its observed disagreement contribution. */
+  static double marginalObservedDisagreement(
+      double sumDistance, long numAnnotationsOfItemOnX, long numAnnotationsOfItemOnY) {
+    return sumDistance
+        * (numAnnotationsOfItemOnX + numAnnotationsOfItemOnY)
+        / ((double) numAnnotationsOfItemOnX * numAnnotationsOfItemOnY);
+  }
+
+  /**
+   * Computes the xRR score from the unnormalized observed and expected disagreement sums and the
+   * total number of annotations on each side.
+   */
+  static double score(
+      double observedSum,
+      double expectedSum,
+      double totalNumAnnotationsX,
+      double totalNumAnnotationsY) {
+    double observedDisagreement = observedSum / (totalNumAnnotationsX + totalNumAnnotationsY);
+    double expectedDisagreement = expectedSum / (totalNumAnnotationsX * totalNumAnnotationsY);
+    return 1 - observedDisagreement / expectedDisagreement;
+  }
+
+  private Disagreements() {}
+}
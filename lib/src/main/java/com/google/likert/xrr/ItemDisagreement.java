@@ -0,0 +1,77 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.util.Map;
+
+/**
+ * Observed disagreement of a single item present in both datasets, as passed to the consumer of
+ * {@link XrrMetric#computeXrr}.
+ *
+ * @param <ItemT> data type of the item that raters are annotating on
+ */
+public final class ItemDisagreement<ItemT> {
+  public final ItemT item;
+  public final double observedDisagreement;
+  public final int numAnnotationsX;
+  public final int numAnnotationsY;
+
+  ItemDisagreement(
+      ItemT item, double observedDisagreement, int numAnnotationsX, int numAnnotationsY) {
+    this.item = item;
+    this.observedDisagreement = observedDisagreement;
+    this.numAnnotationsX = numAnnotationsX;
+    this.numAnnotationsY = numAnnotationsY;
+  }
+
+  /** Computes the observed disagreement of {@code item} from its annotation counts. */
+  static <ItemT, AnnotationT> ItemDisagreement<ItemT> compute(
+      ItemT item,
+      Map<AnnotationT, Integer> annotationCountDictX,
+      Map<AnnotationT, Integer> annotationCountDictY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    return new ItemDisagreement<>(
+        item,
+        Disagreements.marginalObservedDisagreement(
+            annotationCountDictX, annotationCountDictY, distanceFunction),
+        Disagreements.countAnnotations(annotationCountDictX),
+        Disagreements.countAnnotations(annotationCountDictY));
+  }
+
+  /** Returns the item. */
+  public ItemT getItem() {
+    return item;
+  }
+
+  /**
+   * Returns the item's contribution to the observed disagreement: its sum of distances over pairs
+   * of annotations, scaled by {@code (n_x + n_y) / (n_x * n_y)}. The observed disagreement of the
+   * xRR score is the sum of these contributions over all items, divided by the total number of
+   * annotations.
+   */
+  public double getObservedDisagreement() {
+    return observedDisagreement;
+  }
+
+  /** Returns the number of annotations on the item in {@code datasetX}. */
+  public int getNumAnnotationsX() {
+    return numAnnotationsX;
+  }
+
+  /** Returns the number of annotations on the item in {@code datasetY}. */
+  public int getNumAnnotationsY() {
+    return numAnnotationsY;
+  }
+}
@@ -0,0 +1,121 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Streams the items passed to it as CSV lines of {@code item,observed_disagreement,
+ * num_annotations_x,num_annotations_y}, following a header line.
+ *
+ * <p>Each calling thread appends lines to a buffer of its own, and writes that buffer out itself,
+ * under the only shared lock, once it holds {@value #CHUNK_SIZE} characters. Threads of a parallel
+ * xRR computation therefore only contend once per chunk rather than once per item, pending output
+ * is bounded by one chunk per thread, and a computation slows down to the speed of the output
+ * instead of piling up lines. Lines of different threads are interleaved in no particular order.
+ * Items are not escaped, so their string representation should not contain commas or newlines.
+ *
+ * <p>This class is thread-safe. Write failures are thrown as {@link UncheckedIOException}, which
+ * aborts the computation.
+ */
+public final class ItemDisagreementWriter
+    implements Consumer<ItemDisagreement<?>>, Flushable, Closeable {
+
+  private static final String HEADER =
+      "item,observed_disagreement,num_annotations_x,num_annotations_y";
+  /** Number of buffered characters at which a thread writes out its buffer. */
+  private static final int CHUNK_SIZE = 1 << 13;
+
+  private final Writer writer;
+  /** Buffers of all threads, so that {@link #flush()} can write them out. */
+  private final Queue<StringBuilder> buffers = new ConcurrentLinkedQueue<>();
+
+  private final ThreadLocal<StringBuilder> localBuffer =
+      ThreadLocal.withInitial(
+          () -> {
+            StringBuilder buffer = new StringBuilder(CHUNK_SIZE + 256);
+            buffers.add(buffer);
+            return buffer;
+          });
+
+  /** Creates an instance that writes to {@code writer}, and closes it when closed. */
+  public ItemDisagreementWriter(Writer writer) throws IOException {
+    this.writer = writer;
+    writer.write(HEADER + System.lineSeparator());
+  }
+
+  @Override
+  public void accept(ItemDisagreement<?> itemDisagreement) {
+    StringBuilder buffer = localBuffer.get();
+    // Only contended while another thread flushes.
+    synchronized (buffer) {
+      buffer
+          .append(itemDisagreement.item)
+          .append(',')
+          .append(itemDisagreement.observedDisagreement)
+          .append(',')
+          .append(itemDisagreement.numAnnotationsX)
+          .append(',')
+          .append(itemDisagreement.numAnnotationsY)
+          .append(System.lineSeparator());
+      if (buffer.length() >= CHUNK_SIZE) {
+        try {
+          writeOut(buffer);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+
+  /** Writes out the lines buffered by every thread, and flushes the underlying writer. */
+  @Override
+  public void flush() throws IOException {
+    for (StringBuilder buffer : buffers) {
+      synchronized (buffer) {
+        writeOut(buffer);
+      }
+    }
+    synchronized (writer) {
+      writer.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    synchronized (writer) {
+      writer.close();
+    }
+  }
+
+  /** Writes out {@code buffer}, which the calling thread holds the lock of. */
+  private void writeOut(StringBuilder buffer) throws IOException {
+    if (buffer.length() == 0) {
+      return;
+    }
+    synchronized (writer) {
+      writer.append(buffer);
+    }
+    buffer.setLength(0);
+  }
+}
@@ -0,0 +1,264 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Computes the xRR score of {@link XrrMetrics#WITH_MISSING_DATA} over the ratings of a sliding time
+ * window, e.g. to monitor a live labeling vendor against a gold replication.
+ *
+ * <p>The window is split into {@code numBuckets} buckets of equal width, and ratings expire a
+ * bucket at a time. Besides the ratings of each live bucket, only sufficient statistics of the
+ * window are kept: per-item annotation counts, annotation histograms and totals of the intersected
+ * items, and the observed disagreement sum. Adding or expiring ratings updates them in time
+ * proportional to the number of changed items, so memory is bounded by the ratings in the window
+ * and {@link #computeXrr()} only costs one pass over pairs of distinct annotations.
+ *
+ * <p>Ratings of dataset Y may also be added as a reference dataset that never expires.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @param <ItemT> data type of the item that raters are annotating on
+ * @param <AnnotationT> data type of annotation that raters use
+ */
+public final class SlidingWindowXrr<ItemT, AnnotationT> {
+
+  private final long bucketWidthMillis;
+  private final int numBuckets;
+  private final DistanceFunction<? super AnnotationT> distanceFunction;
+
+  private final Side sideX = new Side();
+  private final Side sideY = new Side();
+  /** Ratings added in each live bucket, keyed by bucket index. */
+  private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+
+  private long latestBucketIndex = Long.MIN_VALUE;
+  /** Items rated in both datasets within the window. */
+  private final Set<ItemT> intersectedItems = new HashSet<>();
+  private double observedSum = 0;
+  private long numUpdatesSinceRecompute = 0;
+
+  /**
+   * Creates a scorer over a window of length {@code window}, split into {@code numBuckets}
+   * buckets.
+   *
+   * @param window length of the window; the window covers the latest {@code numBuckets} buckets,
+   *     so its boundary has the granularity of a bucket.
+   * @param numBuckets number of buckets the window is split into
+   * @param distanceFunction function that compares two rater annotations
+   */
+  public SlidingWindowXrr(
+      Duration window, int numBuckets, DistanceFunction<? super AnnotationT> distanceFunction) {
+    if (numBuckets <= 0) {
+      throw new IllegalArgumentException("numBuckets must be positive, got " + numBuckets);
+    }
+    if (window.toMillis() < numBuckets) {
+      throw new IllegalArgumentException(
+          "window must be at least numBuckets milliseconds, got " + window);
+    }
+    this.bucketWidthMillis = window.toMillis() / numBuckets;
+    this.numBuckets = numBuckets;
+    this.distanceFunction = distanceFunction;
+  }
+
+  /**
+   * Adds a rating of dataset X made at {@code timestampMillis}, and slides the window forward if
+   * the rating is newer than the window.
+   *
+   * @return false if the rating is older than the window and was dropped
+   */
+  public synchronized boolean addRatingX(long timestampMillis, Pair<ItemT, AnnotationT> rating) {
+    return addRating(sideX, timestampMillis, rating);
+  }
+
+  /**
+   * Adds a rating of dataset Y made at {@code timestampMillis}, and slides the window forward if
+   * the rating is newer than the window.
+   *
+   * @return false if the rating is older than the window and was dropped
+   */
+  public synchronized boolean addRatingY(long timestampMillis, Pair<ItemT, AnnotationT> rating) {
+    return addRating(sideY, timestampMillis, rating);
+  }
+
+  /**
+   * Adds the ratings of {@code summaryDataset} to dataset Y. These ratings never expire.
+   *
+   * @param summaryDataset a summary dataset that uses annotated item as key, with each value
+   *     represented by a dictionary of annotation and number of annotation rated on the item.
+   */
+  public synchronized void addReferenceDatasetY(
+      Map<ItemT, Map<AnnotationT, Integer>> summaryDataset) {
+    summaryDataset.forEach(
+        (item, annotationCounts) -> updateItem(sideY, item, annotationCounts, 1));
+  }
+
+  /** Slides the window forward so that it ends at {@code timestampMillis}. */
+  public synchronized void advanceTo(long timestampMillis) {
+    advanceToBucket(Math.floorDiv(timestampMillis, bucketWidthMillis));
+  }
+
+  /** Returns the number of items rated in both datasets within the window. */
+  public synchronized int getNumIntersectedItems() {
+    return intersectedItems.size();
+  }
+
+  /** Computes the xRR score over the ratings currently in the window. */
+  public synchronized float computeXrr() {
+    // Keeps the rounding errors of incremental updates bounded. A recompute only visits the
+    // intersected items, and only runs after as many updates, so it costs amortized O(1) per
+    // update.
+    if (numUpdatesSinceRecompute > intersectedItems.size()) {
+      recomputeObservedSum();
+    }
+    double expectedSum = 0;
+    for (Entry<AnnotationT, Long> entryX : sideX.histogram.entrySet()) {
+      for (Entry<AnnotationT, Long> entryY : sideY.histogram.entrySet()) {
+        expectedSum +=
+            distanceFunction.computeDistance(entryX.getKey(), entryY.getKey())
+                * entryX.getValue()
+                * entryY.getValue();
+      }
+    }
+    return (float)
+        Disagreements.score(
+            observedSum, expectedSum, sideX.totalNumAnnotations, sideY.totalNumAnnotations);
+  }
+
+  private boolean addRating(Side side, long timestampMillis, Pair<ItemT, AnnotationT> rating) {
+    long bucketIndex = Math.floorDiv(timestampMillis, bucketWidthMillis);
+    if (isExpired(bucketIndex)) {
+      return false;
+    }
+    advanceToBucket(bucketIndex);
+    buckets
+        .computeIfAbsent(bucketIndex, unused -> new Bucket())
+        .getRatings(side)
+        .computeIfAbsent(rating.first, unused -> new HashMap<>())
+        .merge(rating.second, 1, Integer::sum);
+    updateItem(side, rating.first, Collections.singletonMap(rating.second, 1), 1);
+    return true;
+  }
+
+  private boolean isExpired(long bucketIndex) {
+    return latestBucketIndex != Long.MIN_VALUE && bucketIndex <= latestBucketIndex - numBuckets;
+  }
+
+  private void advanceToBucket(long bucketIndex) {
+    if (bucketIndex <= latestBucketIndex) {
+      return;
+    }
+    latestBucketIndex = bucketIndex;
+    while (!buckets.isEmpty() && isExpired(buckets.firstKey())) {
+      Bucket expiredBucket = buckets.pollFirstEntry().getValue();
+      expiredBucket.ratingsX.forEach(
+          (item, annotationCounts) -> updateItem(sideX, item, annotationCounts, -1));
+      expiredBucket.ratingsY.forEach(
+          (item, annotationCounts) -> updateItem(sideY, item, annotationCounts, -1));
+    }
+  }
+
+  /**
+   * Adds {@code sign * annotationCounts} to the counts of {@code item} on {@code side}, and updates
+   * the statistics of intersected items accordingly.
+   */
+  private void updateItem(
+      Side side, ItemT item, Map<AnnotationT, Integer> annotationCounts, int sign) {
+    Side otherSide = side == sideX ? sideY : sideX;
+    boolean isIntersected =
+        side.annotationCounts.containsKey(item) && otherSide.annotationCounts.containsKey(item);
+    if (isIntersected) {
+      addIntersectedItem(item, -1);
+    }
+    Map<AnnotationT, Integer> itemAnnotationCounts =
+        side.annotationCounts.computeIfAbsent(item, unused -> new HashMap<>());
+    annotationCounts.forEach(
+        (annotation, count) -> mergeCount(itemAnnotationCounts, annotation, sign * count));
+    if (itemAnnotationCounts.isEmpty()) {
+      side.annotationCounts.remove(item);
+    } else if (otherSide.annotationCounts.containsKey(item)) {
+      addIntersectedItem(item, 1);
+    }
+    numUpdatesSinceRecompute++;
+  }
+
+  /** Adds (sign 1) or removes (sign -1) the contribution of an intersected item. */
+  private void addIntersectedItem(ItemT item, int sign) {
+    Map<AnnotationT, Integer> annotationCountsX = sideX.annotationCounts.get(item);
+    Map<AnnotationT, Integer> annotationCountsY = sideY.annotationCounts.get(item);
+    observedSum +=
+        sign
+            * Disagreements.marginalObservedDisagreement(
+                annotationCountsX, annotationCountsY, distanceFunction);
+    sideX.addToHistogram(annotationCountsX, sign);
+    sideY.addToHistogram(annotationCountsY, sign);
+    if (sign > 0) {
+      intersectedItems.add(item);
+    } else {
+      intersectedItems.remove(item);
+    }
+  }
+
+  private void recomputeObservedSum() {
+    double sum = 0;
+    for (ItemT item : intersectedItems) {
+      sum +=
+          Disagreements.marginalObservedDisagreement(
+              sideX.annotationCounts.get(item), sideY.annotationCounts.get(item), distanceFunction);
+    }
+    observedSum = sum;
+    numUpdatesSinceRecompute = 0;
+  }
+
+  private static <K> void mergeCount(Map<K, Integer> counts, K key, int delta) {
+    counts.merge(key, delta, (count, unused) -> count + delta == 0 ? null : count + delta);
+  }
+
+  /** Window statistics of one of the two datasets. */
+  private final class Side {
+    final Map<ItemT, Map<AnnotationT, Integer>> annotationCounts = new HashMap<>();
+    /** Annotation histogram over the intersected items. */
+    final Map<AnnotationT, Long> histogram = new HashMap<>();
+    /** Number of annotations on the intersected items. */
+    long totalNumAnnotations = 0;
+
+    void addToHistogram(Map<AnnotationT, Integer> itemAnnotationCounts, int sign) {
+      for (Entry<AnnotationT, Integer> entry : itemAnnotationCounts.entrySet()) {
+        long delta = (long) sign * entry.getValue();
+        histogram.merge(
+            entry.getKey(), delta, (count, unused) -> count + delta == 0 ? null : count + delta);
+        totalNumAnnotations += sign * entry.getValue();
+      }
+    }
+  }
+
+  /** Ratings added within a single bucket. */
+  private final class Bucket {
+    final Map<ItemT, Map<AnnotationT, Integer>> ratingsX = new HashMap<>();
+    final Map<ItemT, Map<AnnotationT, Integer>> ratingsY = new HashMap<>();
+
+    Map<ItemT, Map<AnnotationT, Integer>> getRatings(Side side) {
+      return side == sideX ? ratingsX : ratingsY;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static java.util.Comparator.comparingDouble;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the items with the largest observed disagreement passed to it.
+ *
+ * <p>Each calling thread keeps its own heap of at most {@code maxNumItems} items, so threads of a
+ * parallel xRR computation do not contend with each other, and the heaps are only merged by
+ * {@link #getItems()}. Memory is therefore bounded by {@code maxNumItems} items per calling thread.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @param <ItemT> data type of the item that raters are annotating on
+ */
+public final class TopItemDisagreements<ItemT> implements Consumer<ItemDisagreement<ItemT>> {
+
+  private static final Comparator<ItemDisagreement<?>> BY_OBSERVED_DISAGREEMENT =
+      comparingDouble(ItemDisagreement::getObservedDisagreement);
+
+  private final int maxNumItems;
+  /** Heaps of all threads, so that {@link #getItems()} can merge them. */
+  private final Queue<PriorityQueue<ItemDisagreement<ItemT>>> heaps =
+      new ConcurrentLinkedQueue<>();
+
+  private final ThreadLocal<PriorityQueue<ItemDisagreement<ItemT>>> localHeap =
+      ThreadLocal.withInitial(
+          () -> {
+            PriorityQueue<ItemDisagreement<ItemT>> heap = newHeap();
+            heaps.add(heap);
+            return heap;
+          });
+
+  /** Creates an instance that keeps at most {@code maxNumItems} items. */
+  public TopItemDisagreements(int maxNumItems) {
+    if (maxNumItems < 1) {
+      throw new IllegalArgumentException("maxNumItems must be positive: " + maxNumItems);
+    }
+    this.maxNumItems = maxNumItems;
+  }
+
+  @Override
+  public void accept(ItemDisagreement<ItemT> itemDisagreement) {
+    PriorityQueue<ItemDisagreement<ItemT>> heap = localHeap.get();
+    // Only contended while another thread reads the items.
+    synchronized (heap) {
+      offer(heap, itemDisagreement);
+    }
+  }
+
+  /** Returns the kept items, from the largest observed disagreement to the smallest. */
+  public List<ItemDisagreement<ItemT>> getItems() {
+    PriorityQueue<ItemDisagreement<ItemT>> mergedHeap = newHeap();
+    for (PriorityQueue<ItemDisagreement<ItemT>> heap : heaps) {
+      synchronized (heap) {
+        heap.forEach(itemDisagreement -> offer(mergedHeap, itemDisagreement));
+      }
+    }
+    List<ItemDisagreement<ItemT>> items = new ArrayList<>(mergedHeap);
+    items.sort(BY_OBSERVED_DISAGREEMENT.reversed());
+    return items;
+  }
+
+  /** Returns a min-heap, so that the least disagreeing item is evicted first. */
+  private PriorityQueue<ItemDisagreement<ItemT>> newHeap() {
+    return new PriorityQueue<>(maxNumItems, BY_OBSERVED_DISAGREEMENT);
+  }
+
+  private void offer(
+      PriorityQueue<ItemDisagreement<ItemT>> heap, ItemDisagreement<ItemT> itemDisagreement) {
+    if (heap.size() < maxNumItems) {
+      heap.add(itemDisagreement);
+    } else if (BY_OBSERVED_DISAGREEMENT.compare(itemDisagreement, heap.peek()) > 0) {
+      heap.poll();
+      heap.add(itemDisagreement);
+    }
+  }
+}
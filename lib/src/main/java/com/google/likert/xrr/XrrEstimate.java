@@ -0,0 +1,60 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+/** An approximate xRR score computed on a sample of items, with its confidence bound. */
+public final class XrrEstimate {
+  public final float score;
+  public final float marginOfError;
+  public final double confidenceLevel;
+  public final int numSampledItems;
+
+  XrrEstimate(float score, float marginOfError, double confidenceLevel, int numSampledItems) {
+    this.score = score;
+    this.marginOfError = marginOfError;
+    this.confidenceLevel = confidenceLevel;
+    this.numSampledItems = numSampledItems;
+  }
+
+  /** Returns the estimated xRR score. */
+  public float getScore() {
+    return score;
+  }
+
+  /**
+   * Returns the half width of the confidence interval around {@link #getScore()}, 0 if the sample
+   * is known to contain every intersected item.
+   */
+  public float getMarginOfError() {
+    return marginOfError;
+  }
+
+  /** Returns the confidence level of {@link #getMarginOfError()}, e.g. 0.95. */
+  public double getConfidenceLevel() {
+    return confidenceLevel;
+  }
+
+  /** Returns the number of intersected items the estimate is based on. */
+  public int getNumSampledItems() {
+    return numSampledItems;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%.4f +/- %.4f (%.0f%% confidence, %d items)",
+        score, marginOfError, confidenceLevel * 100, numSampledItems);
+  }
+}
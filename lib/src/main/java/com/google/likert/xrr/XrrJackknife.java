@@ -0,0 +1,265 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+/**
+ * Leave-one-item-out jackknife and item influence analysis of the xRR score, following the
+ * semantics of {@link XrrMetrics#WITH_MISSING_DATA}.
+ *
+ * <p>Observed disagreement is a sum of per-item terms, and expected disagreement only depends on
+ * the global annotation histograms of the intersected items. The score without a given item is
+ * therefore derived from the full-data totals by subtracting that item's contributions, so the
+ * whole jackknife costs two passes over the intersected items plus one pass over pairs of distinct
+ * annotations, instead of one full xRR computation per item.
+ */
+public final class XrrJackknife {
+
+  /** Leave-one-out score of a single item. */
+  public static final class ItemInfluence<ItemT> {
+    public final ItemT item;
+    public final float leaveOneOutScore;
+    public final float influence;
+
+    ItemInfluence(ItemT item, float leaveOneOutScore, float influence) {
+      this.item = item;
+      this.leaveOneOutScore = leaveOneOutScore;
+      this.influence = influence;
+    }
+
+    /** Returns the item left out. */
+    public ItemT getItem() {
+      return item;
+    }
+
+    /** Returns the xRR score computed without this item. */
+    public float getLeaveOneOutScore() {
+      return leaveOneOutScore;
+    }
+
+    /**
+     * Returns the full xRR score minus {@link #getLeaveOneOutScore()}. Negative values mean the
+     * item drags the score down.
+     */
+    public float getInfluence() {
+      return influence;
+    }
+  }
+
+  /** Summary of a jackknife run. */
+  public static final class Result {
+    public final float score;
+    public final float standardError;
+    public final int numItems;
+
+    Result(float score, float standardError, int numItems) {
+      this.score = score;
+      this.standardError = standardError;
+      this.numItems = numItems;
+    }
+
+    /** Returns the xRR score computed on all intersected items. */
+    public float getScore() {
+      return score;
+    }
+
+    /** Returns the jackknife standard error of the xRR score, NaN with fewer than 2 items. */
+    public float getStandardError() {
+      return standardError;
+    }
+
+    /** Returns the number of intersected items. */
+    public int getNumItems() {
+      return numItems;
+    }
+  }
+
+  /**
+   * Computes the jackknife standard error of the xRR score for {@code datasetX} vs {@code
+   * datasetY}.
+   *
+   * @see #computeWithInfluences
+   */
+  public static <ItemT, AnnotationT> Result compute(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    return computeWithInfluences(datasetX, datasetY, distanceFunction, influence -> {});
+  }
+
+  /**
+   * Computes the leave-one-out xRR score of every item present in both {@code datasetX} and {@code
+   * datasetY}, along with the jackknife standard error of the xRR score.
+   *
+   * <p>Leave-one-out scores are passed to {@code influenceConsumer} one at a time, in the iteration
+   * order of {@code datasetX}, and are not retained, so memory use only depends on the number of
+   * distinct annotations. {@code influenceConsumer} is called from the calling thread.
+   *
+   * @param datasetX a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param datasetY a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param distanceFunction function that compares two rater annotations
+   * @param influenceConsumer receives the leave-one-out score of each intersected item
+   * @param <ItemT> data type of the item that raters are annotating on
+   * @param <AnnotationT> data type of annotation that raters use
+   * @return xRR score on all intersected items and its jackknife standard error
+   */
+  public static <ItemT, AnnotationT> Result computeWithInfluences(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction,
+      Consumer<? super ItemInfluence<ItemT>> influenceConsumer) {
+    return computeWithInfluences(
+        () -> datasetX.keySet().stream().filter(datasetY::containsKey).iterator(),
+        datasetX,
+        datasetY,
+        distanceFunction,
+        influenceConsumer);
+  }
+
+  /**
+   * Same as {@link #computeWithInfluences(Map, Map, DistanceFunction, Consumer)}, restricted to
+   * {@code items}, which must all be present in both datasets. {@code items} is iterated twice.
+   */
+  static <ItemT, AnnotationT> Result computeWithInfluences(
+      Iterable<ItemT> items,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction,
+      Consumer<? super ItemInfluence<ItemT>> influenceConsumer) {
+    // First pass: full-data totals.
+    Map<AnnotationT, Long> histogramX = new HashMap<>();
+    Map<AnnotationT, Long> histogramY = new HashMap<>();
+    long totalNumAnnotationsX = 0;
+    long totalNumAnnotationsY = 0;
+    double observedSum = 0;
+    int numItems = 0;
+    for (ItemT item : items) {
+      Map<AnnotationT, Integer> annotationCountDictX = datasetX.get(item);
+      Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(item);
+      totalNumAnnotationsX += addToHistogram(histogramX, annotationCountDictX);
+      totalNumAnnotationsY += addToHistogram(histogramY, annotationCountDictY);
+      observedSum +=
+          Disagreements.marginalObservedDisagreement(
+              annotationCountDictX, annotationCountDictY, distanceFunction);
+      numItems++;
+    }
+
+    // Distance of each annotation to the other side's histogram, so that removing an item's
+    // annotations from the expected disagreement is linear in the item's distinct annotations.
+    // Y annotations are indexed so that the inner loop accumulates into an array, not a map.
+    List<AnnotationT> annotationsY = new ArrayList<>(histogramY.keySet());
+    long[] countsY = new long[annotationsY.size()];
+    for (int indexY = 0; indexY < countsY.length; indexY++) {
+      countsY[indexY] = histogramY.get(annotationsY.get(indexY));
+    }
+    double[] sumDistanceToX = new double[countsY.length];
+    Map<AnnotationT, Double> distanceToHistogramY = new HashMap<>();
+    double expectedSum = 0;
+    for (Entry<AnnotationT, Long> entryX : histogramX.entrySet()) {
+      AnnotationT annotationX = entryX.getKey();
+      long countX = entryX.getValue();
+      double sumDistanceToY = 0;
+      for (int indexY = 0; indexY < countsY.length; indexY++) {
+        double distance = distanceFunction.computeDistance(annotationX, annotationsY.get(indexY));
+        sumDistanceToY += distance * countsY[indexY];
+        sumDistanceToX[indexY] += distance * countX;
+      }
+      distanceToHistogramY.put(annotationX, sumDistanceToY);
+      expectedSum += sumDistanceToY * countX;
+    }
+    Map<AnnotationT, Double> distanceToHistogramX = new HashMap<>();
+    for (int indexY = 0; indexY < countsY.length; indexY++) {
+      distanceToHistogramX.put(annotationsY.get(indexY), sumDistanceToX[indexY]);
+    }
+    float score =
+        (float)
+            Disagreements.score(
+                observedSum, expectedSum, totalNumAnnotationsX, totalNumAnnotationsY);
+
+    // Second pass: leave-one-out scores, with a running mean and variance (Welford).
+    double meanLeaveOneOutScore = 0;
+    double sumSquaredDeviations = 0;
+    int numVisited = 0;
+    for (ItemT item : items) {
+      Map<AnnotationT, Integer> annotationCountDictX = datasetX.get(item);
+      Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(item);
+      int numAnnotationsOfItemOnX = Disagreements.countAnnotations(annotationCountDictX);
+      int numAnnotationsOfItemOnY = Disagreements.countAnnotations(annotationCountDictY);
+      double itemSumDistance =
+          Disagreements.sumDistance(annotationCountDictX, annotationCountDictY, distanceFunction);
+
+      double leaveOneOutObservedSum =
+          observedSum
+              - Disagreements.marginalObservedDisagreement(
+                  itemSumDistance, numAnnotationsOfItemOnX, numAnnotationsOfItemOnY);
+      // (H_x - c_x) d (H_y - c_y) = H_x d H_y - c_x d H_y - H_x d c_y + c_x d c_y
+      double leaveOneOutExpectedSum =
+          expectedSum
+              - dotProduct(annotationCountDictX, distanceToHistogramY)
+              - dotProduct(annotationCountDictY, distanceToHistogramX)
+              + itemSumDistance;
+      double leaveOneOutScore =
+          Disagreements.score(
+              leaveOneOutObservedSum,
+              leaveOneOutExpectedSum,
+              totalNumAnnotationsX - numAnnotationsOfItemOnX,
+              totalNumAnnotationsY - numAnnotationsOfItemOnY);
+
+      numVisited++;
+      double deviation = leaveOneOutScore - meanLeaveOneOutScore;
+      meanLeaveOneOutScore += deviation / numVisited;
+      sumSquaredDeviations += deviation * (leaveOneOutScore - meanLeaveOneOutScore);
+
+      influenceConsumer.accept(
+          new ItemInfluence<>(
+              item, (float) leaveOneOutScore, (float) (score - leaveOneOutScore)));
+    }
+
+    double standardError =
+        numItems < 2
+            ? Double.NaN
+            : Math.sqrt(sumSquaredDeviations * (numItems - 1) / numItems);
+    return new Result(score, (float) standardError, numItems);
+  }
+
+  private static <AnnotationT> int addToHistogram(
+      Map<AnnotationT, Long> histogram, Map<AnnotationT, Integer> annotationCountDict) {
+    int numAnnotations = 0;
+    for (Entry<AnnotationT, Integer> entry : annotationCountDict.entrySet()) {
+      histogram.merge(entry.getKey(), (long) entry.getValue(), Long::sum);
+      numAnnotations += entry.getValue();
+    }
+    return numAnnotations;
+  }
+
+  private static <AnnotationT> double dotProduct(
+      Map<AnnotationT, Integer> annotationCountDict, Map<AnnotationT, Double> weights) {
+    double sum = 0;
+    for (Entry<AnnotationT, Integer> entry : annotationCountDict.entrySet()) {
+      sum += entry.getValue() * weights.get(entry.getKey());
+    }
+    return sum;
+  }
+
+  private XrrJackknife() {}
+}
@@ -14,6 +14,7 @@
 package com.google.likert.xrr;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 /** A Cross Replication Reliability metric interface. */
 public interface XrrMetric {
@@ -35,4 +36,41 @@ public interface XrrMetric {
       Map<ItemT, Map<AnnotationT, Integer>> datasetX,
       Map<ItemT, Map<AnnotationT, Integer>> datasetY,
       DistanceFunction<? super AnnotationT> distanceFunction);
+
+  /**
+   * Computes xRR score for {@code datasetX} vs {@code datasetY} using specified {@code
+   * distanceFunction}, and passes the observed disagreement of every item present in both datasets
+   * to {@code itemDisagreementConsumer} as it is computed, e.g. a {@link TopItemDisagreements} or
+   * an {@link ItemDisagreementWriter}.
+   *
+   * <p>The default implementation makes a separate pass over the items for their disagreements,
+   * before computing the score with {@link #computeXrr(Map, Map, DistanceFunction)}.
+   *
+   * @param datasetX a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param datasetY a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param distanceFunction function that compares two rater annotations
+   * @param itemDisagreementConsumer receives the observed disagreement of each item, possibly
+   *     concurrently from multiple threads
+   * @param <ItemT> data type of the item that raters are annotating on
+   * @param <AnnotationT> data type of annotation that raters use
+   * @return xRR score represented in {@link Float}
+   */
+  default <ItemT, AnnotationT> float computeXrr(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction,
+      Consumer<? super ItemDisagreement<ItemT>> itemDisagreementConsumer) {
+    datasetX.forEach(
+        (item, annotationCountDictX) -> {
+          Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(item);
+          if (annotationCountDictY != null) {
+            itemDisagreementConsumer.accept(
+                ItemDisagreement.compute(
+                    item, annotationCountDictX, annotationCountDictY, distanceFunction));
+          }
+        });
+    return computeXrr(datasetX, datasetY, distanceFunction);
+  }
 }
@@ -0,0 +1,330 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An execution plan of {@link XrrMetrics#WITH_MISSING_DATA} for a given pair of datasets, as chosen
+ * by {@link XrrPlanner}.
+ *
+ * @param <ItemT> data type of the item that raters are annotating on
+ * @param <AnnotationT> data type of annotation that raters use
+ */
+public final class XrrPlan<ItemT, AnnotationT> {
+
+  /** Algorithms that compute the xRR score. */
+  public enum Strategy {
+    /**
+     * Compares the annotations of every pair of intersected items to compute expected
+     * disagreement, in O(entries_x * entries_y) distance evaluations, where entries is the number
+     * of distinct (item, annotation) pairs. Works best when almost every annotation is distinct.
+     */
+    PAIRWISE,
+    /**
+     * Aggregates annotations of intersected items into one histogram per dataset and compares the
+     * histograms to compute expected disagreement, in O(distinct_x * distinct_y) distance
+     * evaluations.
+     */
+    HISTOGRAM,
+    /**
+     * Only for {@link DistanceFunctions#NOMINAL}: counts matching annotations instead of evaluating
+     * distances, for both observed and expected disagreement. Linear in the number of entries.
+     */
+    NOMINAL_COUNT_MATCHING
+  }
+
+  private final Map<ItemT, Map<AnnotationT, Integer>> datasetX;
+  private final Map<ItemT, Map<AnnotationT, Integer>> datasetY;
+  private final DistanceFunction<? super AnnotationT> distanceFunction;
+  private final List<ItemT> intersectionItems;
+  private final long totalNumAnnotationsX;
+  private final long totalNumAnnotationsY;
+  private final Statistics statistics;
+  private final Strategy strategy;
+  private final boolean parallel;
+
+  XrrPlan(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction,
+      List<ItemT> intersectionItems,
+      long totalNumAnnotationsX,
+      long totalNumAnnotationsY,
+      Statistics statistics,
+      Strategy strategy,
+      boolean parallel) {
+    this.datasetX = datasetX;
+    this.datasetY = datasetY;
+    this.distanceFunction = distanceFunction;
+    this.intersectionItems = intersectionItems;
+    this.totalNumAnnotationsX = totalNumAnnotationsX;
+    this.totalNumAnnotationsY = totalNumAnnotationsY;
+    this.statistics = statistics;
+    this.strategy = strategy;
+    this.parallel = parallel;
+  }
+
+  /** Returns the algorithm this plan runs. */
+  public Strategy getStrategy() {
+    return strategy;
+  }
+
+  /** Returns whether this plan runs on parallel streams. */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Returns a human readable report of the statistics gathered on the datasets, the estimated cost
+   * of each strategy, and why this plan was chosen.
+   */
+  public String explain() {
+    StringBuilder explanation = new StringBuilder();
+    explanation.append(String.format("Plan: %s, %s", strategy, describeParallel(parallel)));
+    if (strategy != statistics.strategy || parallel != statistics.parallel) {
+      explanation.append(
+          String.format(
+              " (forced, planned %s, %s)",
+              statistics.strategy, describeParallel(statistics.parallel)));
+    }
+    explanation.append(String.format("%n"));
+    int smallerDatasetSize = Math.max(1, Math.min(datasetX.size(), datasetY.size()));
+    explanation.append(
+        String.format(
+            "Items: %d in X, %d in Y, %d intersected (%.1f%% overlap)%n",
+            datasetX.size(),
+            datasetY.size(),
+            intersectionItems.size(),
+            100.0 * intersectionItems.size() / smallerDatasetSize));
+    explanation.append(
+        String.format(
+            "Annotations on intersected items: %d in X (%.2f per item), %d in Y (%.2f per item)%n",
+            totalNumAnnotationsX,
+            (double) totalNumAnnotationsX / Math.max(1, intersectionItems.size()),
+            totalNumAnnotationsY,
+            (double) totalNumAnnotationsY / Math.max(1, intersectionItems.size())));
+    explanation.append(
+        String.format(
+            "Distinct annotations: ~%.0f in X, ~%.0f in Y (from %d sampled items)%n",
+            statistics.numDistinctAnnotationsX,
+            statistics.numDistinctAnnotationsY,
+            statistics.numSampledItems));
+    explanation.append(String.format("Estimated cost, in distance evaluations:%n"));
+    for (Strategy candidate : Strategy.values()) {
+      explanation.append(
+          statistics.costs.containsKey(candidate)
+              ? String.format(
+                  "  %s: %.3g%s%n",
+                  candidate,
+                  statistics.costs.get(candidate),
+                  candidate == statistics.strategy ? " (chosen)" : "")
+              : String.format(
+                  "  %s: not applicable, distance function is not NOMINAL%n", candidate));
+    }
+    explanation.append(
+        statistics.parallel
+            ? String.format(
+                "Parallel: estimated cost is at least %d, with %d processors%n",
+                XrrPlanner.PARALLEL_COST_THRESHOLD, statistics.numProcessors)
+            : statistics.numProcessors > 1
+                ? String.format(
+                    "Sequential: estimated cost is below %d%n",
+                    XrrPlanner.PARALLEL_COST_THRESHOLD)
+                : String.format("Sequential: only 1 processor available%n"));
+    return explanation.toString();
+  }
+
+  private static String describeParallel(boolean parallel) {
+    return parallel ? "parallel" : "sequential";
+  }
+
+  /**
+   * Returns a copy of this plan that runs {@code strategy} instead, regardless of its cost, e.g. to
+   * compare strategies with each other. {@link Strategy#NOMINAL_COUNT_MATCHING} is only correct
+   * for {@link DistanceFunctions#NOMINAL}.
+   */
+  XrrPlan<ItemT, AnnotationT> withStrategy(Strategy strategy) {
+    return new XrrPlan<>(
+        datasetX,
+        datasetY,
+        distanceFunction,
+        intersectionItems,
+        totalNumAnnotationsX,
+        totalNumAnnotationsY,
+        statistics,
+        strategy,
+        parallel);
+  }
+
+  /**
+   * Returns a copy of this plan that runs on parallel streams if {@code parallel}, or sequentially
+   * otherwise, regardless of its cost, e.g. to compare both with each other.
+   */
+  XrrPlan<ItemT, AnnotationT> withParallel(boolean parallel) {
+    return new XrrPlan<>(
+        datasetX,
+        datasetY,
+        distanceFunction,
+        intersectionItems,
+        totalNumAnnotationsX,
+        totalNumAnnotationsY,
+        statistics,
+        strategy,
+        parallel);
+  }
+
+  /** Computes the xRR score. */
+  public float execute() {
+    return execute(itemDisagreement -> {});
+  }
+
+  /**
+   * Computes the xRR score, and passes the observed disagreement of every intersected item to
+   * {@code itemDisagreementConsumer} as it is computed. When the plan {@link #isParallel() is
+   * parallel}, the consumer is called concurrently from multiple threads, in no particular order.
+   */
+  public float execute(Consumer<? super ItemDisagreement<ItemT>> itemDisagreementConsumer) {
+    double observedSum =
+        stream(intersectionItems)
+            .mapToDouble(
+                item -> {
+                  ItemDisagreement<ItemT> itemDisagreement = computeItemDisagreement(item);
+                  itemDisagreementConsumer.accept(itemDisagreement);
+                  return itemDisagreement.observedDisagreement;
+                })
+            .sum();
+    return (float)
+        Disagreements.score(
+            observedSum, computeExpectedSum(), totalNumAnnotationsX, totalNumAnnotationsY);
+  }
+
+  private ItemDisagreement<ItemT> computeItemDisagreement(ItemT item) {
+    Map<AnnotationT, Integer> annotationCountDictX = datasetX.get(item);
+    Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(item);
+    int numAnnotationsOfItemOnX = Disagreements.countAnnotations(annotationCountDictX);
+    int numAnnotationsOfItemOnY = Disagreements.countAnnotations(annotationCountDictY);
+    double sumDistance =
+        strategy == Strategy.NOMINAL_COUNT_MATCHING
+            ? (double) numAnnotationsOfItemOnX * numAnnotationsOfItemOnY
+                - countMatches(annotationCountDictX, annotationCountDictY)
+            : Disagreements.sumDistance(
+                annotationCountDictX, annotationCountDictY, distanceFunction);
+    return new ItemDisagreement<>(
+        item,
+        Disagreements.marginalObservedDisagreement(
+            sumDistance, numAnnotationsOfItemOnX, numAnnotationsOfItemOnY),
+        numAnnotationsOfItemOnX,
+        numAnnotationsOfItemOnY);
+  }
+
+  private double computeExpectedSum() {
+    switch (strategy) {
+      case PAIRWISE:
+        return stream(intersectionItems)
+            .mapToDouble(
+                itemX ->
+                    intersectionItems.stream()
+                        .mapToDouble(
+                            itemY ->
+                                Disagreements.sumDistance(
+                                    datasetX.get(itemX), datasetY.get(itemY), distanceFunction))
+                        .sum())
+            .sum();
+      case HISTOGRAM:
+        Map<AnnotationT, Long> histogramY = histogram(datasetY);
+        return stream(histogram(datasetX).entrySet())
+            .mapToDouble(
+                entryX ->
+                    entryX.getValue()
+                        * histogramY.entrySet().stream()
+                            .mapToDouble(
+                                entryY ->
+                                    distanceFunction.computeDistance(
+                                            entryX.getKey(), entryY.getKey())
+                                        * entryY.getValue())
+                            .sum())
+            .sum();
+      case NOMINAL_COUNT_MATCHING:
+        return (double) totalNumAnnotationsX * totalNumAnnotationsY
+            - countMatches(histogram(datasetX), histogram(datasetY));
+    }
+    throw new AssertionError("Unknown strategy " + strategy);
+  }
+
+  private Map<AnnotationT, Long> histogram(Map<ItemT, Map<AnnotationT, Integer>> dataset) {
+    return stream(intersectionItems)
+        .flatMap(item -> dataset.get(item).entrySet().stream())
+        .collect(Collectors.toMap(Entry::getKey, entry -> (long) entry.getValue(), Long::sum));
+  }
+
+  /** Returns the number of pairs of equal annotations, one from each of the given counts. */
+  private static <AnnotationT> double countMatches(
+      Map<AnnotationT, ? extends Number> annotationCountsX,
+      Map<AnnotationT, ? extends Number> annotationCountsY) {
+    if (annotationCountsX.size() > annotationCountsY.size()) {
+      return countMatches(annotationCountsY, annotationCountsX);
+    }
+    double numMatches = 0;
+    for (Entry<AnnotationT, ? extends Number> entryX : annotationCountsX.entrySet()) {
+      Number countY = annotationCountsY.get(entryX.getKey());
+      if (countY != null) {
+        numMatches += entryX.getValue().doubleValue() * countY.doubleValue();
+      }
+    }
+    return numMatches;
+  }
+
+  /**
+   * Statistics gathered by {@link XrrPlanner} and the plan it chose, kept to {@link #explain()}
+   * the plan on demand.
+   */
+  static final class Statistics {
+    final Map<Strategy, Double> costs;
+    final double numDistinctAnnotationsX;
+    final double numDistinctAnnotationsY;
+    final int numSampledItems;
+    final int numProcessors;
+    final Strategy strategy;
+    final boolean parallel;
+
+    Statistics(
+        Map<Strategy, Double> costs,
+        double numDistinctAnnotationsX,
+        double numDistinctAnnotationsY,
+        int numSampledItems,
+        int numProcessors,
+        Strategy strategy,
+        boolean parallel) {
+      this.costs = costs;
+      this.numDistinctAnnotationsX = numDistinctAnnotationsX;
+      this.numDistinctAnnotationsY = numDistinctAnnotationsY;
+      this.numSampledItems = numSampledItems;
+      this.numProcessors = numProcessors;
+      this.strategy = strategy;
+      this.parallel = parallel;
+    }
+  }
+
+  private <T> Stream<T> stream(Collection<T> collection) {
+    return parallel ? collection.parallelStream() : collection.stream();
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import com.google.likert.xrr.XrrPlan.Strategy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Picks the fastest algorithm to compute {@link XrrMetrics#WITH_MISSING_DATA} on a given pair of
+ * datasets.
+ *
+ * <p>The planner makes one pass over the items of {@code datasetX} to gather cheap statistics: the
+ * intersected items, their number of annotations and of distinct (item, annotation) entries, and
+ * the number of distance evaluations or lookups observed disagreement needs. The number of distinct
+ * annotations is estimated from the first {@value #ANNOTATION_SAMPLE_SIZE} intersected items. The
+ * cost of each applicable {@link Strategy} is then estimated in units of distance evaluations, and
+ * the cheapest one is picked. Plans whose estimated cost is below {@value #PARALLEL_COST_THRESHOLD}
+ * run sequentially, since forking parallel streams would dominate.
+ */
+public final class XrrPlanner {
+
+  /** Estimated cost below which a plan runs sequentially. */
+  static final long PARALLEL_COST_THRESHOLD = 100_000;
+  /** Cost of a hash map operation relative to a distance evaluation. */
+  private static final double HASH_OPERATION_COST = 4;
+  /** Number of intersected items whose annotations are used to estimate distinct annotations. */
+  private static final int ANNOTATION_SAMPLE_SIZE = 1000;
+
+  /**
+   * Plans the computation of xRR score for {@code datasetX} vs {@code datasetY} using specified
+   * {@code distanceFunction}.
+   *
+   * @param datasetX a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param datasetY a summary dataset that uses annotated item as key, with each value represented
+   *     by a dictionary of annotation and number of annotation rated on the item.
+   * @param distanceFunction function that compares two rater annotations
+   * @param <ItemT> data type of the item that raters are annotating on
+   * @param <AnnotationT> data type of annotation that raters use
+   * @return plan that computes the xRR score when executed
+   */
+  public static <ItemT, AnnotationT> XrrPlan<ItemT, AnnotationT> plan(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    List<ItemT> intersectionItems = new ArrayList<>();
+    long totalNumAnnotationsX = 0;
+    long totalNumAnnotationsY = 0;
+    long numEntriesX = 0;
+    long numEntriesY = 0;
+    double numObservedDistances = 0;
+    long numObservedLookups = 0;
+    Set<AnnotationT> sampledAnnotationsX = new HashSet<>();
+    Set<AnnotationT> sampledAnnotationsY = new HashSet<>();
+    long numSampledEntriesX = 0;
+    long numSampledEntriesY = 0;
+    for (Entry<ItemT, Map<AnnotationT, Integer>> entryX : datasetX.entrySet()) {
+      Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(entryX.getKey());
+      if (annotationCountDictY == null) {
+        continue;
+      }
+      Map<AnnotationT, Integer> annotationCountDictX = entryX.getValue();
+      intersectionItems.add(entryX.getKey());
+      totalNumAnnotationsX += Disagreements.countAnnotations(annotationCountDictX);
+      totalNumAnnotationsY += Disagreements.countAnnotations(annotationCountDictY);
+      numEntriesX += annotationCountDictX.size();
+      numEntriesY += annotationCountDictY.size();
+      numObservedDistances += (double) annotationCountDictX.size() * annotationCountDictY.size();
+      numObservedLookups += Math.min(annotationCountDictX.size(), annotationCountDictY.size());
+      if (intersectionItems.size() <= ANNOTATION_SAMPLE_SIZE) {
+        sampledAnnotationsX.addAll(annotationCountDictX.keySet());
+        sampledAnnotationsY.addAll(annotationCountDictY.keySet());
+        numSampledEntriesX += annotationCountDictX.size();
+        numSampledEntriesY += annotationCountDictY.size();
+      }
+    }
+    double numDistinctAnnotationsX =
+        estimateDistinctAnnotations(sampledAnnotationsX.size(), numSampledEntriesX, numEntriesX);
+    double numDistinctAnnotationsY =
+        estimateDistinctAnnotations(sampledAnnotationsY.size(), numSampledEntriesY, numEntriesY);
+
+    Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+    costs.put(Strategy.PAIRWISE, numObservedDistances + (double) numEntriesX * numEntriesY);
+    costs.put(
+        Strategy.HISTOGRAM,
+        numObservedDistances
+            + HASH_OPERATION_COST * (numEntriesX + numEntriesY)
+            + numDistinctAnnotationsX * numDistinctAnnotationsY);
+    boolean isNominal = distanceFunction == DistanceFunctions.NOMINAL;
+    if (isNominal) {
+      costs.put(
+          Strategy.NOMINAL_COUNT_MATCHING,
+          HASH_OPERATION_COST
+              * (numObservedLookups
+                  + numEntriesX
+                  + numEntriesY
+                  + Math.min(numDistinctAnnotationsX, numDistinctAnnotationsY)));
+    }
+    Strategy strategy = Strategy.PAIRWISE;
+    for (Entry<Strategy, Double> cost : costs.entrySet()) {
+      if (cost.getValue() <= costs.get(strategy)) {
+        strategy = cost.getKey();
+      }
+    }
+    double cost = costs.get(strategy);
+    int numProcessors = Runtime.getRuntime().availableProcessors();
+    boolean parallel = cost >= PARALLEL_COST_THRESHOLD && numProcessors > 1;
+
+    return new XrrPlan<>(
+        datasetX,
+        datasetY,
+        distanceFunction,
+        intersectionItems,
+        totalNumAnnotationsX,
+        totalNumAnnotationsY,
+        new XrrPlan.Statistics(
+            costs,
+            numDistinctAnnotationsX,
+            numDistinctAnnotationsY,
+            Math.min(intersectionItems.size(), ANNOTATION_SAMPLE_SIZE),
+            numProcessors,
+            strategy,
+            parallel),
+        strategy,
+        parallel);
+  }
+
+  /**
+   * Estimates the number of distinct annotations among {@code numEntries} entries, given that
+   * {@code numSampledEntries} of them have {@code numSampledDistinct} distinct annotations.
+   */
+  private static double estimateDistinctAnnotations(
+      int numSampledDistinct, long numSampledEntries, long numEntries) {
+    if (numSampledEntries == numEntries || numSampledDistinct * 2L <= numSampledEntries) {
+      // The sample covers every entry, or annotations repeat often enough that the vocabulary is
+      // likely to be saturated already.
+      return numSampledDistinct;
+    }
+    // Mostly distinct annotations, e.g. unbounded interval data: assumes linear growth.
+    return (double) numSampledDistinct * numEntries / numSampledEntries;
+  }
+
+  private XrrPlanner() {}
+}
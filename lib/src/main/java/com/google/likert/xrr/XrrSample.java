@@ -0,0 +1,178 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.likert.xrr;
+
+import static java.util.Comparator.comparingDouble;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+/**
+ * A bottom-k sample of intersected items, built by an {@link XrrSampler}, to estimate the xRR score
+ * of {@link XrrMetrics#WITH_MISSING_DATA}.
+ *
+ * <p>Items are added one at a time along with their annotations in both datasets, and the sample
+ * keeps the {@code sampleSize} items of lowest {@link XrrSampler#rank}. Since the sample only
+ * depends on which items were added, samples of disjoint shards or of consecutive chunks of a
+ * stream can be built independently and {@link #merge merged} into the sample of their union,
+ * as long as they come from samplers with the same sample size and seed.
+ *
+ * <p>The sample keeps references to the annotation count dictionaries of the sampled items, which
+ * must not be modified afterwards. Instances are not thread safe: build one sample per thread or
+ * shard, then merge them.
+ *
+ * @param <ItemT> data type of the item that raters are annotating on
+ * @param <AnnotationT> data type of annotation that raters use
+ */
+public final class XrrSample<ItemT, AnnotationT> {
+
+  private final XrrSampler sampler;
+  /** Sampled items by item, and as a max-heap of rank to evict the highest ranked one. */
+  private final Map<ItemT, SampledItem<ItemT, AnnotationT>> sampledItems = new HashMap<>();
+
+  private final PriorityQueue<SampledItem<ItemT, AnnotationT>> highestRankedItems =
+      new PriorityQueue<>(
+          comparingDouble((SampledItem<ItemT, AnnotationT> sampledItem) -> -sampledItem.rank));
+
+  private boolean sampledAllItems = true;
+
+  XrrSample(XrrSampler sampler) {
+    this.sampler = sampler;
+  }
+
+  /**
+   * Adds an item present in both datasets, with its annotation count dictionary in each of them.
+   * Adding an item that is already in the sample has no effect.
+   */
+  public void add(
+      ItemT item,
+      Map<AnnotationT, Integer> annotationCountDictX,
+      Map<AnnotationT, Integer> annotationCountDictY) {
+    double rank = sampler.rank(item);
+    if (isOutsideSample(item, rank)) {
+      sampledAllItems = false;
+      return;
+    }
+    add(new SampledItem<>(item, rank, annotationCountDictX, annotationCountDictY));
+  }
+
+  /** Adds every item present in both {@code datasetX} and {@code datasetY}. */
+  public void addAll(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY) {
+    for (Entry<ItemT, Map<AnnotationT, Integer>> entryX : datasetX.entrySet()) {
+      double rank = sampler.rank(entryX.getKey());
+      if (isOutsideSample(entryX.getKey(), rank)) {
+        // Checks the rank first so that most items skip the lookup in datasetY.
+        sampledAllItems = false;
+        continue;
+      }
+      Map<AnnotationT, Integer> annotationCountDictY = datasetY.get(entryX.getKey());
+      if (annotationCountDictY != null) {
+        add(new SampledItem<>(entryX.getKey(), rank, entryX.getValue(), annotationCountDictY));
+      }
+    }
+  }
+
+  /**
+   * Adds every item of {@code other} to this sample, so that it becomes the sample of the items
+   * added to either of them, and returns this sample.
+   *
+   * @throws IllegalArgumentException if {@code other} was built by a sampler with another sample
+   *     size or seed
+   */
+  public XrrSample<ItemT, AnnotationT> merge(XrrSample<ItemT, AnnotationT> other) {
+    if (other.sampler.getSampleSize() != sampler.getSampleSize()
+        || other.sampler.getSeed() != sampler.getSeed()) {
+      throw new IllegalArgumentException(
+          "Cannot merge samples of different sample sizes or seeds");
+    }
+    sampledAllItems &= other.sampledAllItems;
+    for (SampledItem<ItemT, AnnotationT> sampledItem : other.sampledItems.values()) {
+      if (isOutsideSample(sampledItem.item, sampledItem.rank)) {
+        sampledAllItems = false;
+      } else {
+        add(sampledItem);
+      }
+    }
+    return this;
+  }
+
+  /** Returns the number of sampled items. */
+  public int size() {
+    return sampledItems.size();
+  }
+
+  /**
+   * Estimates the xRR score from the sampled items, with the target error and confidence level of
+   * the sampler that built this sample.
+   */
+  public XrrEstimate estimate(DistanceFunction<? super AnnotationT> distanceFunction) {
+    List<SampledItem<ItemT, AnnotationT>> itemsInRankOrder = new ArrayList<>(sampledItems.values());
+    itemsInRankOrder.sort(comparingDouble(sampledItem -> sampledItem.rank));
+    List<ItemT> items = new ArrayList<>(itemsInRankOrder.size());
+    Map<ItemT, Map<AnnotationT, Integer>> datasetX = new HashMap<>();
+    Map<ItemT, Map<AnnotationT, Integer>> datasetY = new HashMap<>();
+    for (SampledItem<ItemT, AnnotationT> sampledItem : itemsInRankOrder) {
+      items.add(sampledItem.item);
+      datasetX.put(sampledItem.item, sampledItem.annotationCountDictX);
+      datasetY.put(sampledItem.item, sampledItem.annotationCountDictY);
+    }
+    return sampler.estimate(items, datasetX, datasetY, distanceFunction, sampledAllItems);
+  }
+
+  /** Returns whether an item of the given rank would be evicted right away if it was added. */
+  private boolean isOutsideSample(ItemT item, double rank) {
+    if (sampledItems.size() < sampler.getSampleSize()) {
+      return false;
+    }
+    double maxRank = highestRankedItems.peek().rank;
+    return rank > maxRank || (rank == maxRank && !sampledItems.containsKey(item));
+  }
+
+  private void add(SampledItem<ItemT, AnnotationT> sampledItem) {
+    if (sampledItems.putIfAbsent(sampledItem.item, sampledItem) != null) {
+      return;
+    }
+    highestRankedItems.add(sampledItem);
+    if (sampledItems.size() > sampler.getSampleSize()) {
+      sampledItems.remove(highestRankedItems.poll().item);
+      sampledAllItems = false;
+    }
+  }
+
+  private static final class SampledItem<ItemT, AnnotationT> {
+    final ItemT item;
+    final double rank;
+    final Map<AnnotationT, Integer> annotationCountDictX;
+    final Map<AnnotationT, Integer> annotationCountDictY;
+
+    SampledItem(
+        ItemT item,
+        double rank,
+        Map<AnnotationT, Integer> annotationCountDictX,
+        Map<AnnotationT, Integer> annotationCountDictY) {
+      this.item = item;
+      this.rank = rank;
+      this.annotationCountDictX = annotationCountDictX;
+      this.annotationCountDictY = annotationCountDictY;
+    }
+  }
+}
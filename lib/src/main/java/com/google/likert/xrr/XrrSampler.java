@@ -0,0 +1,202 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Item sampling settings for {@link XrrMetrics#computeApproximateXrr}.
+ *
+ * <p>Each item is ranked by a seeded hash of its {@link Object#hashCode()}, and the sample is the
+ * {@code sampleSize} intersected items of lowest rank (a bottom-k sample). The sample only depends
+ * on the items themselves, not on the iteration order of the datasets, so shards or streams
+ * sampled with the same sample size and seed can each fill their own {@link #newSample() sample},
+ * and {@link XrrSample#merge merging} those yields the sample of all the shards. Ranks are only
+ * stable across processes when items have value-based hash codes, e.g. {@link String} or {@link
+ * Integer}, not identity hash codes. Items whose hash codes collide share a rank, e.g. {@link Long}
+ * items {@code 1L} and {@code 1L << 32}.
+ *
+ * <p>Observed and expected disagreements are estimated from the sampled items, and the margin of
+ * error comes from the jackknife standard error of the sample score (see {@link XrrJackknife}).
+ * With a target error, the sampled items are visited in rank order, which is itself a uniform
+ * sample at every prefix, and sampling stops at the first prefix whose margin of error meets the
+ * target.
+ *
+ * <p>Selecting the sample always scans every key of {@code datasetX} once, hashing each key and
+ * only looking up {@code datasetY} for keys that rank within the sample so far. An estimate
+ * therefore costs one full key scan plus O(sample size) disagreement work, and a target error
+ * only saves the latter.
+ *
+ * <p>Instances are immutable.
+ */
+public final class XrrSampler {
+
+  private static final double DEFAULT_CONFIDENCE_LEVEL = 0.95;
+  private static final long DEFAULT_SEED = 0x5DEECE66DL;
+  /** Smallest prefix of the sample checked against the target error. */
+  private static final int MIN_ADAPTIVE_SAMPLE_SIZE = 128;
+
+  private final int sampleSize;
+  private final double targetError;
+  private final double confidenceLevel;
+  private final long seed;
+
+  private XrrSampler(int sampleSize, double targetError, double confidenceLevel, long seed) {
+    this.sampleSize = sampleSize;
+    this.targetError = targetError;
+    this.confidenceLevel = confidenceLevel;
+    this.seed = seed;
+  }
+
+  /**
+   * Returns a sampler that samples at most {@code sampleSize} intersected items, with a 95%
+   * confidence level and no target error.
+   */
+  public static XrrSampler withSampleSize(int sampleSize) {
+    if (sampleSize < 2) {
+      throw new IllegalArgumentException("sampleSize must be at least 2, got " + sampleSize);
+    }
+    return new XrrSampler(sampleSize, Double.NaN, DEFAULT_CONFIDENCE_LEVEL, DEFAULT_SEED);
+  }
+
+  /**
+   * Returns a copy of this sampler that stops sampling as soon as the margin of error is at most
+   * {@code targetError}. The sample size remains an upper bound.
+   */
+  public XrrSampler withTargetError(double targetError) {
+    if (!(targetError > 0)) {
+      throw new IllegalArgumentException("targetError must be positive, got " + targetError);
+    }
+    return new XrrSampler(sampleSize, targetError, confidenceLevel, seed);
+  }
+
+  /** Returns a copy of this sampler whose margin of error has the given confidence level. */
+  public XrrSampler withConfidenceLevel(double confidenceLevel) {
+    if (!(confidenceLevel > 0 && confidenceLevel < 1)) {
+      throw new IllegalArgumentException(
+          "confidenceLevel must be in (0, 1), got " + confidenceLevel);
+    }
+    return new XrrSampler(sampleSize, targetError, confidenceLevel, seed);
+  }
+
+  /** Returns a copy of this sampler that ranks items with the given hash seed. */
+  public XrrSampler withSeed(long seed) {
+    return new XrrSampler(sampleSize, targetError, confidenceLevel, seed);
+  }
+
+  /** Returns the rank of {@code item} in [0, 1); items of lowest rank are sampled first. */
+  public double rank(Object item) {
+    // SplitMix64 finalizer, so that sequential hash codes (e.g. Integer items) spread uniformly.
+    long hash = item.hashCode() + seed;
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    hash = hash ^ (hash >>> 31);
+    return (hash >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * Returns an empty sample of at most {@code sampleSize} items, to be filled incrementally, e.g.
+   * one per shard of the datasets before {@link XrrSample#merge merging} them.
+   */
+  public <ItemT, AnnotationT> XrrSample<ItemT, AnnotationT> newSample() {
+    return new XrrSample<>(this);
+  }
+
+  int getSampleSize() {
+    return sampleSize;
+  }
+
+  long getSeed() {
+    return seed;
+  }
+
+  /** Estimates the xRR score of {@link XrrMetrics#WITH_MISSING_DATA} from sampled items. */
+  <ItemT, AnnotationT> XrrEstimate estimate(
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction) {
+    XrrSample<ItemT, AnnotationT> sample = newSample();
+    sample.addAll(datasetX, datasetY);
+    return sample.estimate(distanceFunction);
+  }
+
+  /**
+   * Estimates the xRR score from {@code sampledItems}, given in rank order, whose annotations are
+   * in {@code datasetX} and {@code datasetY}.
+   */
+  <ItemT, AnnotationT> XrrEstimate estimate(
+      List<ItemT> sampledItems,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+      Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+      DistanceFunction<? super AnnotationT> distanceFunction,
+      boolean sampledAllItems) {
+    double zScore = inverseStandardNormalCdf(1 - (1 - confidenceLevel) / 2);
+    if (!Double.isNaN(targetError)) {
+      for (int prefixSize = MIN_ADAPTIVE_SAMPLE_SIZE;
+          prefixSize < sampledItems.size();
+          prefixSize *= 2) {
+        XrrJackknife.Result result =
+            XrrJackknife.computeWithInfluences(
+                sampledItems.subList(0, prefixSize),
+                datasetX,
+                datasetY,
+                distanceFunction,
+                influence -> {});
+        float marginOfError = (float) (zScore * result.standardError);
+        if (marginOfError <= targetError) {
+          return new XrrEstimate(result.score, marginOfError, confidenceLevel, prefixSize);
+        }
+      }
+    }
+    XrrJackknife.Result result =
+        XrrJackknife.computeWithInfluences(
+            sampledItems, datasetX, datasetY, distanceFunction, influence -> {});
+    float marginOfError = sampledAllItems ? 0F : (float) (zScore * result.standardError);
+    return new XrrEstimate(result.score, marginOfError, confidenceLevel, sampledItems.size());
+  }
+
+  /** Acklam's rational approximation of the standard normal quantile, for p in (0, 1). */
+  private static double inverseStandardNormalCdf(double p) {
+    final double[] a = {
+      -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00
+    };
+    final double[] b = {
+      -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01
+    };
+    final double[] c = {
+      -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549671010322803e+00, 4.374664141464968e+00, 2.938163982698783e+00
+    };
+    final double[] d = {
+      7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00
+    };
+    final double pLow = 0.02425;
+    if (p < pLow || p > 1 - pLow) {
+      double q = Math.sqrt(-2 * Math.log(Math.min(p, 1 - p)));
+      double x =
+          (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+              / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+      return p < pLow ? x : -x;
+    }
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5])
+        * q
+        / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+  }
+}
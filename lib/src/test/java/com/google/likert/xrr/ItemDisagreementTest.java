@@ -0,0 +1,193 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.XrrTestData.TOLERANCE;
+import static com.google.likert.xrr.XrrTestData.XRR_RESULT;
+import static com.google.likert.xrr.XrrTestData.annotations;
+import static com.google.likert.xrr.XrrTestData.getTestDataA;
+import static com.google.likert.xrr.XrrTestData.getTestDataB;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link ItemDisagreement} consumers of {@link XrrMetric#computeXrr}. */
+@RunWith(JUnit4.class)
+public final class ItemDisagreementTest {
+
+  @Test
+  public void computeXrr_passesEveryIntersectedItem() {
+    List<ItemDisagreement<Integer>> itemDisagreements = new ArrayList<>();
+
+    float score =
+        XrrMetrics.WITH_MISSING_DATA.computeXrr(
+            getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL, itemDisagreements::add);
+
+    assertThat(score).isWithin(TOLERANCE).of(XRR_RESULT);
+    Map<Integer, ItemDisagreement<Integer>> byItem =
+        itemDisagreements.stream().collect(Collectors.toMap(ItemDisagreement::getItem, x -> x));
+    assertThat(byItem.keySet()).containsExactly(1, 2, 3, 4, 5);
+    // Item 1 agrees, item 3 is ("A", "A") vs ("A", "B"): 2 disagreeing pairs * (2 + 2) / (2 * 2).
+    assertThat(byItem.get(1).getObservedDisagreement()).isWithin(TOLERANCE).of(0);
+    assertThat(byItem.get(3).getObservedDisagreement()).isWithin(TOLERANCE).of(2);
+    assertThat(byItem.get(2).getNumAnnotationsX()).isEqualTo(3);
+    assertThat(byItem.get(2).getNumAnnotationsY()).isEqualTo(2);
+  }
+
+  @Test
+  public void computeXrr_defaultImplementation_matchesWithMissingData() {
+    XrrMetric metric =
+        new XrrMetric() {
+          @Override
+          public <ItemT, AnnotationT> float computeXrr(
+              Map<ItemT, Map<AnnotationT, Integer>> datasetX,
+              Map<ItemT, Map<AnnotationT, Integer>> datasetY,
+              DistanceFunction<? super AnnotationT> distanceFunction) {
+            return XrrMetrics.WITH_MISSING_DATA.computeXrr(datasetX, datasetY, distanceFunction);
+          }
+        };
+    TopItemDisagreements<Integer> expected = new TopItemDisagreements<>(5);
+    TopItemDisagreements<Integer> actual = new TopItemDisagreements<>(5);
+
+    XrrMetrics.WITH_MISSING_DATA.computeXrr(
+        getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL, expected);
+    float score =
+        metric.computeXrr(getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL, actual);
+
+    assertThat(score).isWithin(TOLERANCE).of(XRR_RESULT);
+    assertThat(actual.getItems()).hasSize(5);
+    for (int i = 0; i < 5; i++) {
+      assertThat(actual.getItems().get(i).getObservedDisagreement())
+          .isWithin(TOLERANCE)
+          .of(expected.getItems().get(i).getObservedDisagreement());
+    }
+  }
+
+  @Test
+  public void computeXrr_largeInput_matchesScoreWithoutConsumer() {
+    Map<Integer, Map<Integer, Integer>> datasetX = new HashMap<>();
+    Map<Integer, Map<Integer, Integer>> datasetY = new HashMap<>();
+    for (int item = 0; item < 10000; item++) {
+      datasetX.put(item, ImmutableMap.of(item % 7, 2, (item + 1) % 7, 1));
+      datasetY.put(item, ImmutableMap.of(item % 7, 1, (item + 3) % 7, 1));
+    }
+    XrrPlan<Integer, Integer> plan =
+        XrrPlanner.plan(datasetX, datasetY, DistanceFunctions.INTERVAL_SQUARED);
+    TopItemDisagreements<Integer> topItems = new TopItemDisagreements<>(10);
+    TopItemDisagreements<Integer> sequentialTopItems = new TopItemDisagreements<>(10);
+    ConcurrentHashMap<Integer, Integer> numCallsByItem = new ConcurrentHashMap<>();
+
+    float score =
+        XrrMetrics.WITH_MISSING_DATA.computeXrr(
+            datasetX,
+            datasetY,
+            DistanceFunctions.INTERVAL_SQUARED,
+            itemDisagreement -> {
+              numCallsByItem.merge(itemDisagreement.getItem(), 1, Integer::sum);
+              topItems.accept(itemDisagreement);
+            });
+    plan.withParallel(false).execute(sequentialTopItems);
+
+    if (Runtime.getRuntime().availableProcessors() > 1) {
+      assertThat(plan.isParallel()).isTrue();
+    }
+    assertThat(score).isWithin(TOLERANCE).of(plan.withParallel(false).execute());
+    assertThat(numCallsByItem).hasSize(10000);
+    assertThat(numCallsByItem.values().stream().allMatch(numCalls -> numCalls == 1)).isTrue();
+    assertThat(topItems.getItems()).hasSize(10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(topItems.getItems().get(i).getObservedDisagreement())
+          .isWithin(TOLERANCE)
+          .of(sequentialTopItems.getItems().get(i).getObservedDisagreement());
+    }
+  }
+
+  @Test
+  public void topItemDisagreements_keepsLargestObservedDisagreements() {
+    TopItemDisagreements<Integer> topItems = new TopItemDisagreements<>(2);
+
+    XrrMetrics.WITH_MISSING_DATA.computeXrr(
+        getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL, topItems);
+
+    // Items 2 and 4 disagree on 3 of 6 pairs, i.e. 3 * (3 + 2) / (3 * 2) = 2.5.
+    assertThat(
+            topItems.getItems().stream()
+                .map(ItemDisagreement::getItem)
+                .collect(Collectors.toList()))
+        .containsExactly(2, 4);
+    assertThat(topItems.getItems().get(0).getObservedDisagreement())
+        .isWithin(TOLERANCE)
+        .of(2.5);
+  }
+
+  @Test
+  public void topItemDisagreements_fromManyThreads_keepsOverallLargest() {
+    TopItemDisagreements<Integer> topItems = new TopItemDisagreements<>(3);
+
+    IntStream.range(0, 10000)
+        .parallel()
+        .forEach(item -> topItems.accept(new ItemDisagreement<>(item, item, 1, 1)));
+
+    assertThat(
+            topItems.getItems().stream()
+                .map(ItemDisagreement::getItem)
+                .collect(Collectors.toList()))
+        .containsExactly(9999, 9998, 9997)
+        .inOrder();
+  }
+
+  @Test
+  public void itemDisagreementWriter_flush_writesBufferedLines() throws IOException {
+    StringWriter output = new StringWriter();
+    ItemDisagreementWriter writer = new ItemDisagreementWriter(output);
+
+    writer.accept(new ItemDisagreement<>("item", 0.5, 1, 2));
+    writer.flush();
+
+    assertThat(output.toString()).endsWith("item,0.5,1,2" + System.lineSeparator());
+  }
+
+  @Test
+  public void itemDisagreementWriter_writesCsvLines() throws IOException {
+    StringWriter output = new StringWriter();
+
+    try (ItemDisagreementWriter writer = new ItemDisagreementWriter(output)) {
+      XrrMetrics.WITH_MISSING_DATA.computeXrr(
+          ImmutableMap.of(1, annotations(1, 1)),
+          ImmutableMap.of(1, annotations(0, 2)),
+          DistanceFunctions.NOMINAL,
+          writer);
+    }
+
+    assertThat(output.toString())
+        .isEqualTo(
+            "item,observed_disagreement,num_annotations_x,num_annotations_y"
+                + System.lineSeparator()
+                + "1,2.0,2,2"
+                + System.lineSeparator());
+  }
+}
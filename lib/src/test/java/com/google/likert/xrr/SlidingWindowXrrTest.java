@@ -0,0 +1,177 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.XrrTestData.TOLERANCE;
+import static com.google.likert.xrr.XrrTestData.XRR_RESULT;
+import static com.google.likert.xrr.XrrTestData.getTestDataB;
+
+import com.google.common.collect.ImmutableList;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link SlidingWindowXrr}. */
+@RunWith(JUnit4.class)
+public final class SlidingWindowXrrTest {
+
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  @Test
+  public void computeXrr_ratingsWithinWindow_computesCorrectResult() {
+    SlidingWindowXrr<Integer, String> slidingWindowXrr =
+        new SlidingWindowXrr<>(Duration.ofHours(2), 120, DistanceFunctions.NOMINAL);
+
+    getTestRawDatasetA().forEach(rating -> slidingWindowXrr.addRatingX(HOUR_MILLIS, rating));
+    getTestRawDatasetB().forEach(rating -> slidingWindowXrr.addRatingY(2 * HOUR_MILLIS, rating));
+
+    assertThat(slidingWindowXrr.getNumIntersectedItems()).isEqualTo(5);
+    assertThat(slidingWindowXrr.computeXrr()).isWithin(TOLERANCE).of(XRR_RESULT);
+  }
+
+  @Test
+  public void computeXrr_expiredRatings_areExcluded() {
+    SlidingWindowXrr<Integer, String> slidingWindowXrr =
+        new SlidingWindowXrr<>(Duration.ofHours(1), 60, DistanceFunctions.NOMINAL);
+    slidingWindowXrr.addReferenceDatasetY(getTestDataB());
+    // Ratings that disagree with the reference dataset on every item, expired below.
+    for (int item = 1; item <= 6; item++) {
+      slidingWindowXrr.addRatingX(0, Pair.of(item, "C"));
+    }
+
+    getTestRawDatasetA().forEach(rating -> slidingWindowXrr.addRatingX(HOUR_MILLIS, rating));
+
+    assertThat(slidingWindowXrr.getNumIntersectedItems()).isEqualTo(5);
+    assertThat(slidingWindowXrr.computeXrr()).isWithin(TOLERANCE).of(XRR_RESULT);
+
+    slidingWindowXrr.advanceTo(3 * HOUR_MILLIS);
+
+    assertThat(slidingWindowXrr.getNumIntersectedItems()).isEqualTo(0);
+  }
+
+  @Test
+  public void computeXrr_manyAddAndExpireCycles_matchesMaterializedWindow() {
+    long bucketWidthMillis = Duration.ofMinutes(1).toMillis();
+    int numBuckets = 10;
+    SlidingWindowXrr<Integer, Integer> slidingWindowXrr =
+        new SlidingWindowXrr<>(
+            Duration.ofMinutes(numBuckets), numBuckets, DistanceFunctions.INTERVAL_SQUARED);
+    List<TimedRating> ratingsX = new ArrayList<>();
+    List<TimedRating> ratingsY = new ArrayList<>();
+    Random random = new Random(7);
+
+    for (long timestampMillis = 0;
+        timestampMillis < 60 * bucketWidthMillis;
+        timestampMillis += 1000) {
+      // Most items of X are never rated in Y.
+      Pair<Integer, Integer> ratingX = Pair.of(random.nextInt(500), random.nextInt(5));
+      slidingWindowXrr.addRatingX(timestampMillis, ratingX);
+      ratingsX.add(new TimedRating(timestampMillis, ratingX));
+      if (random.nextInt(3) == 0) {
+        Pair<Integer, Integer> ratingY = Pair.of(random.nextInt(50), random.nextInt(5));
+        slidingWindowXrr.addRatingY(timestampMillis, ratingY);
+        ratingsY.add(new TimedRating(timestampMillis, ratingY));
+      }
+      if (timestampMillis % (bucketWidthMillis / 2) != 0) {
+        continue;
+      }
+
+      long oldestBucketIndex = timestampMillis / bucketWidthMillis - numBuckets + 1;
+      Map<Integer, Map<Integer, Integer>> windowX =
+          materialize(ratingsX, oldestBucketIndex * bucketWidthMillis);
+      Map<Integer, Map<Integer, Integer>> windowY =
+          materialize(ratingsY, oldestBucketIndex * bucketWidthMillis);
+      long numIntersectedItems = windowX.keySet().stream().filter(windowY::containsKey).count();
+      assertThat(slidingWindowXrr.getNumIntersectedItems()).isEqualTo(numIntersectedItems);
+      if (numIntersectedItems > 0) {
+        assertThat(slidingWindowXrr.computeXrr())
+            .isWithin(TOLERANCE)
+            .of(
+                XrrMetrics.WITH_MISSING_DATA.computeXrr(
+                    windowX, windowY, DistanceFunctions.INTERVAL_SQUARED));
+      }
+    }
+  }
+
+  @Test
+  public void addRating_olderThanWindow_isDropped() {
+    SlidingWindowXrr<Integer, String> slidingWindowXrr =
+        new SlidingWindowXrr<>(Duration.ofHours(1), 60, DistanceFunctions.NOMINAL);
+    slidingWindowXrr.advanceTo(2 * HOUR_MILLIS);
+
+    assertThat(slidingWindowXrr.addRatingX(HOUR_MILLIS - 1, Pair.of(1, "A"))).isFalse();
+    assertThat(slidingWindowXrr.addRatingX(2 * HOUR_MILLIS - 1, Pair.of(1, "A"))).isTrue();
+  }
+
+  private static Map<Integer, Map<Integer, Integer>> materialize(
+      List<TimedRating> ratings, long windowStartMillis) {
+    Map<Integer, Map<Integer, Integer>> window = new HashMap<>();
+    for (TimedRating rating : ratings) {
+      if (rating.timestampMillis >= windowStartMillis) {
+        window
+            .computeIfAbsent(rating.rating.first, unused -> new HashMap<>())
+            .merge(rating.rating.second, 1, Integer::sum);
+      }
+    }
+    return window;
+  }
+
+  private static final class TimedRating {
+    final long timestampMillis;
+    final Pair<Integer, Integer> rating;
+
+    TimedRating(long timestampMillis, Pair<Integer, Integer> rating) {
+      this.timestampMillis = timestampMillis;
+      this.rating = rating;
+    }
+  }
+
+  private ImmutableList<Pair<Integer, String>> getTestRawDatasetA() {
+    return ImmutableList.of(
+        Pair.of(1, "B"),
+        Pair.of(1, "B"),
+        Pair.of(2, "B"),
+        Pair.of(2, "B"),
+        Pair.of(2, "B"),
+        Pair.of(3, "A"),
+        Pair.of(3, "A"),
+        Pair.of(4, "A"),
+        Pair.of(4, "A"),
+        Pair.of(4, "A"),
+        Pair.of(5, "A"),
+        Pair.of(5, "B"));
+  }
+
+  private ImmutableList<Pair<Integer, String>> getTestRawDatasetB() {
+    return ImmutableList.of(
+        Pair.of(1, "B"),
+        Pair.of(1, "B"),
+        Pair.of(2, "A"),
+        Pair.of(2, "B"),
+        Pair.of(3, "A"),
+        Pair.of(3, "B"),
+        Pair.of(4, "A"),
+        Pair.of(4, "B"),
+        Pair.of(5, "A"),
+        Pair.of(5, "A"));
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.XrrTestData.TOLERANCE;
+import static com.google.likert.xrr.XrrTestData.XRR_RESULT;
+import static com.google.likert.xrr.XrrTestData.getTestDataA;
+import static com.google.likert.xrr.XrrTestData.getTestDataB;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link XrrJackknife}. */
+@RunWith(JUnit4.class)
+public final class XrrJackknifeTest {
+
+  @Test
+  public void computeWithInfluences_matchesRecomputationWithoutEachItem() {
+    Map<Integer, Map<String, Integer>> datasetA = getTestDataA();
+    Map<Integer, Map<String, Integer>> datasetB = getTestDataB();
+    Map<Integer, Float> leaveOneOutScores = new HashMap<>();
+
+    XrrJackknife.Result result =
+        XrrJackknife.computeWithInfluences(
+            datasetA,
+            datasetB,
+            DistanceFunctions.NOMINAL,
+            influence -> leaveOneOutScores.put(influence.item, influence.leaveOneOutScore));
+
+    assertThat(result.getScore()).isWithin(TOLERANCE).of(XRR_RESULT);
+    assertThat(result.getNumItems()).isEqualTo(5);
+    assertThat(leaveOneOutScores.keySet()).containsExactly(1, 2, 3, 4, 5);
+    for (int item : leaveOneOutScores.keySet()) {
+      Map<Integer, Map<String, Integer>> datasetAWithoutItem = new HashMap<>(datasetA);
+      datasetAWithoutItem.remove(item);
+      float expectedScore =
+          XrrMetrics.WITH_MISSING_DATA.computeXrr(
+              datasetAWithoutItem, datasetB, DistanceFunctions.NOMINAL);
+      assertThat(leaveOneOutScores.get(item)).isWithin(TOLERANCE).of(expectedScore);
+    }
+  }
+
+  @Test
+  public void compute_returnsJackknifeStandardError() {
+    Map<Integer, Map<String, Integer>> datasetA = getTestDataA();
+    Map<Integer, Map<String, Integer>> datasetB = getTestDataB();
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int item : datasetB.keySet()) {
+      Map<Integer, Map<String, Integer>> datasetAWithoutItem = new HashMap<>(datasetA);
+      datasetAWithoutItem.remove(item);
+      double score =
+          XrrMetrics.WITH_MISSING_DATA.computeXrr(
+              datasetAWithoutItem, datasetB, DistanceFunctions.NOMINAL);
+      sum += score;
+      sumOfSquares += score * score;
+    }
+    int n = datasetB.size();
+    double expectedStandardError =
+        Math.sqrt((n - 1) / (double) n * (sumOfSquares - sum * sum / n));
+
+    XrrJackknife.Result result =
+        XrrJackknife.compute(datasetA, datasetB, DistanceFunctions.NOMINAL);
+
+    assertThat(result.getStandardError()).isWithin(TOLERANCE).of((float) expectedStandardError);
+  }
+}
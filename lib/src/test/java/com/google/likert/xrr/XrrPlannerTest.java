@@ -0,0 +1,108 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.XrrTestData.TOLERANCE;
+import static com.google.likert.xrr.XrrTestData.XRR_RESULT;
+import static com.google.likert.xrr.XrrTestData.getTestDataA;
+import static com.google.likert.xrr.XrrTestData.getTestDataB;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.likert.xrr.XrrPlan.Strategy;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link XrrPlanner}. */
+@RunWith(JUnit4.class)
+public final class XrrPlannerTest {
+
+  @Test
+  public void plan_smallInput_runsSequentially() {
+    XrrPlan<Integer, String> plan =
+        XrrPlanner.plan(getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL);
+
+    assertThat(plan.isParallel()).isFalse();
+    assertThat(plan.explain()).contains("sequential");
+    assertThat(plan.execute()).isWithin(TOLERANCE).of(XRR_RESULT);
+  }
+
+  @Test
+  public void execute_everyStrategy_matchesKnownResult() {
+    XrrPlan<Integer, String> plan =
+        XrrPlanner.plan(getTestDataA(), getTestDataB(), DistanceFunctions.NOMINAL);
+
+    for (Strategy strategy : Strategy.values()) {
+      assertThat(plan.withStrategy(strategy).execute()).isWithin(TOLERANCE).of(XRR_RESULT);
+    }
+  }
+
+  @Test
+  public void plan_nominalDistanceWithLargeVocabulary_matchesCounts() {
+    Map<Integer, Map<String, Integer>> datasetX = new HashMap<>();
+    Map<Integer, Map<String, Integer>> datasetY = new HashMap<>();
+    for (int item = 0; item < 100; item++) {
+      datasetX.put(item, ImmutableMap.of("label" + item, 2, "label" + (item + 1), 1));
+      datasetY.put(item, ImmutableMap.of("label" + item, 1, "label" + (item + 2), 1));
+    }
+
+    XrrPlan<Integer, String> plan = XrrPlanner.plan(datasetX, datasetY, DistanceFunctions.NOMINAL);
+
+    assertThat(plan.getStrategy()).isEqualTo(Strategy.NOMINAL_COUNT_MATCHING);
+    assertThat(plan.explain()).contains("NOMINAL_COUNT_MATCHING: ");
+    assertThat(plan.execute())
+        .isWithin(TOLERANCE)
+        .of(plan.withStrategy(Strategy.PAIRWISE).execute());
+  }
+
+  @Test
+  public void plan_smallVocabulary_usesHistograms() {
+    Map<Integer, Map<Integer, Integer>> datasetX = new HashMap<>();
+    Map<Integer, Map<Integer, Integer>> datasetY = new HashMap<>();
+    for (int item = 0; item < 100; item++) {
+      datasetX.put(item, ImmutableMap.of(item % 5, 2, (item + 1) % 5, 1));
+      datasetY.put(item, ImmutableMap.of(item % 5, 1, (item + 2) % 5, 1));
+    }
+
+    XrrPlan<Integer, Integer> plan =
+        XrrPlanner.plan(datasetX, datasetY, DistanceFunctions.INTERVAL_SQUARED);
+
+    assertThat(plan.getStrategy()).isEqualTo(Strategy.HISTOGRAM);
+    assertThat(plan.execute())
+        .isWithin(TOLERANCE)
+        .of(plan.withStrategy(Strategy.PAIRWISE).execute());
+  }
+
+  @Test
+  public void plan_distinctAnnotations_comparesItemsPairwise() {
+    Map<Integer, Map<Double, Integer>> datasetX = new HashMap<>();
+    Map<Integer, Map<Double, Integer>> datasetY = new HashMap<>();
+    for (int item = 0; item < 10; item++) {
+      datasetX.put(item, ImmutableMap.of(item + 0.1, 1, item + 0.2, 1));
+      datasetY.put(item, ImmutableMap.of(item + 0.3, 1));
+    }
+
+    XrrPlan<Integer, Double> plan =
+        XrrPlanner.plan(datasetX, datasetY, DistanceFunctions.INTERVAL_SQUARED);
+
+    assertThat(plan.getStrategy()).isEqualTo(Strategy.PAIRWISE);
+    assertThat(plan.explain()).contains("NOMINAL_COUNT_MATCHING: not applicable");
+    // Computed by hand over all pairs of annotations.
+    assertThat(plan.execute()).isWithin(TOLERANCE).of(0.9984871F);
+  }
+}
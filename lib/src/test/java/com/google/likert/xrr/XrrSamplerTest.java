@@ -0,0 +1,163 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.likert.xrr.XrrTestData.TOLERANCE;
+import static com.google.likert.xrr.XrrTestData.XRR_RESULT;
+import static com.google.likert.xrr.XrrTestData.getTestDataA;
+import static com.google.likert.xrr.XrrTestData.getTestDataB;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit test for {@link XrrSampler}. */
+@RunWith(JUnit4.class)
+public final class XrrSamplerTest {
+
+  private static final int NUM_ITEMS = 20000;
+
+  @Test
+  public void computeApproximateXrr_sampleCoversAllItems_isExact() {
+    XrrEstimate estimate =
+        XrrMetrics.WITH_MISSING_DATA.computeApproximateXrr(
+            getTestDataA(),
+            getTestDataB(),
+            DistanceFunctions.NOMINAL,
+            XrrSampler.withSampleSize(10));
+
+    assertThat(estimate.getScore()).isWithin(TOLERANCE).of(XRR_RESULT);
+    assertThat(estimate.getMarginOfError()).isEqualTo(0F);
+    assertThat(estimate.getNumSampledItems()).isEqualTo(5);
+  }
+
+  @Test
+  public void computeApproximateXrr_largeDataset_scoreIsWithinMarginOfError() {
+    Map<Integer, Map<Integer, Integer>> datasetX = getRandomDataset(new Random(1));
+    Map<Integer, Map<Integer, Integer>> datasetY = getRandomDataset(new Random(2));
+    float exactScore =
+        XrrJackknife.compute(datasetX, datasetY, DistanceFunctions.INTERVAL_SQUARED).getScore();
+
+    XrrEstimate estimate =
+        XrrMetrics.WITH_MISSING_DATA.computeApproximateXrr(
+            datasetX,
+            datasetY,
+            DistanceFunctions.INTERVAL_SQUARED,
+            XrrSampler.withSampleSize(4000).withConfidenceLevel(0.999));
+
+    assertThat(estimate.getNumSampledItems()).isEqualTo(4000);
+    assertThat(estimate.getMarginOfError()).isGreaterThan(0F);
+    assertThat(estimate.getScore()).isWithin(estimate.getMarginOfError()).of(exactScore);
+  }
+
+  @Test
+  public void computeApproximateXrr_withTargetError_stopsOnceTargetIsMet() {
+    Map<Integer, Map<Integer, Integer>> datasetX = getRandomDataset(new Random(1));
+    Map<Integer, Map<Integer, Integer>> datasetY = getRandomDataset(new Random(2));
+
+    XrrEstimate estimate =
+        XrrMetrics.WITH_MISSING_DATA.computeApproximateXrr(
+            datasetX,
+            datasetY,
+            DistanceFunctions.INTERVAL_SQUARED,
+            XrrSampler.withSampleSize(NUM_ITEMS).withTargetError(0.05));
+
+    assertThat(estimate.getNumSampledItems()).isLessThan(NUM_ITEMS);
+    assertThat(estimate.getMarginOfError()).isAtMost(0.05F);
+  }
+
+  @Test
+  public void merge_shardedSamples_matchesSampleOfWholeDataset() {
+    Map<Integer, Map<Integer, Integer>> datasetX = getRandomDataset(new Random(1));
+    Map<Integer, Map<Integer, Integer>> datasetY = getRandomDataset(new Random(2));
+    XrrSampler sampler = XrrSampler.withSampleSize(1000).withSeed(7);
+    List<XrrSample<Integer, Integer>> shardSamples = new ArrayList<>();
+    for (int shard = 0; shard < 4; shard++) {
+      shardSamples.add(sampler.newSample());
+    }
+    datasetX.forEach(
+        (item, annotationCountDictX) ->
+            shardSamples.get(item % 4).add(item, annotationCountDictX, datasetY.get(item)));
+
+    XrrSample<Integer, Integer> merged = shardSamples.stream().reduce(XrrSample::merge).get();
+    XrrEstimate expected =
+        XrrMetrics.WITH_MISSING_DATA.computeApproximateXrr(
+            datasetX, datasetY, DistanceFunctions.INTERVAL_SQUARED, sampler);
+    XrrEstimate actual = merged.estimate(DistanceFunctions.INTERVAL_SQUARED);
+
+    assertThat(merged.size()).isEqualTo(1000);
+    assertThat(actual.getNumSampledItems()).isEqualTo(expected.getNumSampledItems());
+    assertThat(actual.getScore()).isWithin(TOLERANCE).of(expected.getScore());
+    assertThat(actual.getMarginOfError()).isWithin(TOLERANCE).of(expected.getMarginOfError());
+  }
+
+  @Test
+  public void merge_samplesCoverAllItems_isExact() {
+    Map<Integer, Map<String, Integer>> datasetX = getTestDataA();
+    Map<Integer, Map<String, Integer>> datasetY = getTestDataB();
+    XrrSampler sampler = XrrSampler.withSampleSize(10);
+    XrrSample<Integer, String> sample = sampler.newSample();
+    XrrSample<Integer, String> otherSample = sampler.newSample();
+    sample.add(1, datasetX.get(1), datasetY.get(1));
+    sample.add(2, datasetX.get(2), datasetY.get(2));
+    otherSample.add(2, datasetX.get(2), datasetY.get(2));
+    otherSample.add(3, datasetX.get(3), datasetY.get(3));
+    otherSample.add(4, datasetX.get(4), datasetY.get(4));
+    otherSample.add(5, datasetX.get(5), datasetY.get(5));
+
+    XrrEstimate estimate = sample.merge(otherSample).estimate(DistanceFunctions.NOMINAL);
+
+    assertThat(estimate.getScore()).isWithin(TOLERANCE).of(XRR_RESULT);
+    assertThat(estimate.getMarginOfError()).isEqualTo(0F);
+    assertThat(estimate.getNumSampledItems()).isEqualTo(5);
+  }
+
+  @Test
+  public void merge_differentSeeds_throws() {
+    XrrSample<Integer, Integer> sample = XrrSampler.withSampleSize(10).newSample();
+    XrrSample<Integer, Integer> otherSample =
+        XrrSampler.withSampleSize(10).withSeed(1).newSample();
+
+    assertThrows(IllegalArgumentException.class, () -> sample.merge(otherSample));
+  }
+
+  @Test
+  public void withSampleSize_rejectsTooSmallSample() {
+    assertThrows(IllegalArgumentException.class, () -> XrrSampler.withSampleSize(1));
+  }
+
+  /** Items share a per-item true rating, so both datasets agree beyond chance. */
+  private Map<Integer, Map<Integer, Integer>> getRandomDataset(Random random) {
+    Random itemRandom = new Random(42);
+    Map<Integer, Map<Integer, Integer>> dataset = new HashMap<>();
+    for (int item = 0; item < NUM_ITEMS; item++) {
+      int trueRating = itemRandom.nextInt(5);
+      Map<Integer, Integer> annotations = new HashMap<>();
+      for (int rating = 0; rating < 3; rating++) {
+        int annotation = random.nextInt(3) == 0 ? random.nextInt(5) : trueRating;
+        annotations.merge(annotation, 1, Integer::sum);
+      }
+      dataset.put(item, annotations);
+    }
+    return dataset;
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.likert.xrr;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/** Small summary datasets shared by the unit tests of this package. */
+final class XrrTestData {
+
+  static final float TOLERANCE = 0.0001F;
+  /** xRR score of {@link #getTestDataA()} vs {@link #getTestDataB()} with nominal distance. */
+  static final float XRR_RESULT = 0.1818182F;
+
+  /** Returns dataset A, including item 6 that is not in dataset B. */
+  static ImmutableMap<Integer, Map<String, Integer>> getTestDataA() {
+    ImmutableMap.Builder<Integer, Map<String, Integer>> builder = new ImmutableMap.Builder<>();
+    builder.put(1, annotations(0, 2));
+    builder.put(2, annotations(0, 3));
+    builder.put(3, annotations(2, 0));
+    builder.put(4, annotations(3, 0));
+    builder.put(5, annotations(1, 1));
+    builder.put(6, annotations(3, 0));
+    return builder.build();
+  }
+
+  static ImmutableMap<Integer, Map<String, Integer>> getTestDataB() {
+    ImmutableMap.Builder<Integer, Map<String, Integer>> builder = new ImmutableMap.Builder<>();
+    builder.put(1, annotations(0, 2));
+    builder.put(2, annotations(1, 1));
+    builder.put(3, annotations(1, 1));
+    builder.put(4, annotations(1, 1));
+    builder.put(5, annotations(2, 0));
+    return builder.build();
+  }
+
+  static ImmutableMap<String, Integer> annotations(int countA, int countB) {
+    return ImmutableMap.of("A", countA, "B", countB);
+  }
+
+  private XrrTestData() {}
+}